@@ -0,0 +1,32 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.RedisBloomFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+
+@Configuration
+public class BloomFilterConfig {
+
+    @Value("${hmdp.bloom.fpp:0.01}")
+    private double fpp;
+
+    @Bean
+    public RedisBloomFilter shopBloomFilter(StringRedisTemplate stringRedisTemplate, CacheClient cacheClient,
+                                            @Value("${hmdp.bloom.shop.expected-insertions:1000000}") long expectedInsertions) {
+        RedisBloomFilter filter = new RedisBloomFilter("shop", stringRedisTemplate, expectedInsertions, fpp);
+        // 查询店铺缓存之前先经过布隆过滤器
+        cacheClient.registerBloomFilter(CACHE_SHOP_KEY, filter);
+        return filter;
+    }
+
+    @Bean
+    public RedisBloomFilter voucherBloomFilter(StringRedisTemplate stringRedisTemplate,
+                                               @Value("${hmdp.bloom.voucher.expected-insertions:1000000}") long expectedInsertions) {
+        return new RedisBloomFilter("voucher", stringRedisTemplate, expectedInsertions, fpp);
+    }
+}
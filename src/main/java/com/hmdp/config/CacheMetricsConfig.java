@@ -0,0 +1,41 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.CacheInvalidator;
+import com.hmdp.utils.CacheRebuildExecutor;
+import com.hmdp.utils.LocalCache;
+import com.hmdp.utils.SingleFlight;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 把缓存组件的统计信息注册到Micrometer，通过/actuator/prometheus导出
+ * 队列长度、积压等瞬时值注册为Gauge，只增不减的累计次数注册为FunctionCounter；每次采集直接读取组件的计数器，不构造stats()
+ * 缓存组件本身依赖MeterRegistry，因此不能用MeterBinder，改为在所有单例创建完成后注册
+ * 秒杀、分布式锁、订单超时和笔记相关的组件在各自的构造方法中注册自己的指标
+ */
+@Configuration
+public class CacheMetricsConfig {
+
+    @Bean
+    public SmartInitializingSingleton cacheComponentMetrics(MeterRegistry registry, LocalCache localCache,
+                                                            SingleFlight singleFlight,
+                                                            CacheRebuildExecutor rebuildExecutor,
+                                                            CacheInvalidator invalidator) {
+        return () -> {
+            Gauge.builder("cache.local.size", localCache, LocalCache::size).register(registry);
+            Gauge.builder("cache.local.hit.rate", localCache, LocalCache::hitRate).register(registry);
+            Gauge.builder("cache.local.hot.size", localCache, LocalCache::hotSize).register(registry);
+            Gauge.builder("cache.single.flight.in.flight", singleFlight, SingleFlight::inFlight).register(registry);
+            Gauge.builder("cache.rebuild.queue.depth", rebuildExecutor, CacheRebuildExecutor::queueDepth).register(registry);
+            Gauge.builder("cache.rebuild.active", rebuildExecutor, CacheRebuildExecutor::active).register(registry);
+            FunctionCounter.builder("cache.rebuild.failed", rebuildExecutor, CacheRebuildExecutor::failedCount).register(registry);
+            FunctionCounter.builder("cache.rebuild.rejected", rebuildExecutor, CacheRebuildExecutor::rejectedCount).register(registry);
+            Gauge.builder("cache.invalidate.queue.depth", invalidator, CacheInvalidator::queueDepth).register(registry);
+            FunctionCounter.builder("cache.invalidate.dropped", invalidator, CacheInvalidator::droppedCount).register(registry);
+        };
+    }
+}
@@ -0,0 +1,58 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.CacheInvalidator;
+import com.hmdp.utils.CacheRebuildExecutor;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.LocalCache;
+import com.hmdp.utils.SingleFlight;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 缓存运维端点：GET /actuator/cachestats 查询本节点本地缓存、请求合并、重建线程池、异步失效和热点key的统计信息
+ * 其中包含热点key等内部数据，因此只通过管理端口开放，不放在业务接口中
+ */
+@Component
+@Endpoint(id = "cachestats")
+public class CacheStatsEndpoint {
+
+    private final LocalCache localCache;
+
+    private final SingleFlight singleFlight;
+
+    private final CacheRebuildExecutor cacheRebuildExecutor;
+
+    private final CacheInvalidator cacheInvalidator;
+
+    private final HotKeyDetector hotKeyDetector;
+
+    public CacheStatsEndpoint(LocalCache localCache, SingleFlight singleFlight,
+                              CacheRebuildExecutor cacheRebuildExecutor, CacheInvalidator cacheInvalidator,
+                              HotKeyDetector hotKeyDetector) {
+        this.localCache = localCache;
+        this.singleFlight = singleFlight;
+        this.cacheRebuildExecutor = cacheRebuildExecutor;
+        this.cacheInvalidator = cacheInvalidator;
+        this.hotKeyDetector = hotKeyDetector;
+    }
+
+    /**
+     * @return local：本地缓存命中率、淘汰数、失效通知延迟等；singleFlight：每个key的等待者数量；
+     * rebuild：重建队列深度、去重和拒绝次数、失败次数等；invalidation：异步失效的队列深度、重试和放弃次数；
+     * hotKeys：热点key及其窗口内的估算访问次数，按访问次数从高到低排列
+     */
+    @ReadOperation
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("local", localCache.stats());
+        stats.put("singleFlight", singleFlight.stats());
+        stats.put("rebuild", cacheRebuildExecutor.stats());
+        stats.put("invalidation", cacheInvalidator.stats());
+        stats.put("hotKeys", hotKeyDetector.hotKeys());
+        return stats;
+    }
+}
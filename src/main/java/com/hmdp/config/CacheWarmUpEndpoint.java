@@ -0,0 +1,41 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.CacheWarmer;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 缓存预热的运维端点：GET /actuator/cachewarmup 查询进度，POST 触发预热
+ * 预热会全量扫描店铺和优惠券，因此只通过管理端口开放，不放在业务接口中
+ */
+@Component
+@Endpoint(id = "cachewarmup")
+public class CacheWarmUpEndpoint {
+
+    private final CacheWarmer cacheWarmer;
+
+    public CacheWarmUpEndpoint(CacheWarmer cacheWarmer) {
+        this.cacheWarmer = cacheWarmer;
+    }
+
+    @ReadOperation
+    public Map<String, Object> progress() {
+        return cacheWarmer.progress();
+    }
+
+    /**
+     * @return started为false表示本节点已有预热任务在执行
+     */
+    @WriteOperation
+    public Map<String, Object> warmUp() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("started", cacheWarmer.startAsync());
+        result.putAll(cacheWarmer.progress());
+        return result;
+    }
+}
@@ -1,5 +1,6 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.CacheMetrics;
 import com.hmdp.utils.LoginInterceptor;
 import com.hmdp.utils.RefreshTokenInterceptor;
 import org.springframework.context.annotation.Configuration;
@@ -15,11 +16,14 @@ public class MvcConfig implements WebMvcConfigurer {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheMetrics cacheMetrics;
+
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         // 第一个拦截器，放行所有，仅做刷新以及保存到ThreadLocal中的作用
         // token刷新拦截器
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).order(0);
+        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate, cacheMetrics)).order(0);
 
         // 登录拦截器
         registry.addInterceptor(new LoginInterceptor()).excludePathPatterns(
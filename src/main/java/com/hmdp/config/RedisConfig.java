@@ -0,0 +1,75 @@
+package com.hmdp.config;
+
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.LocalCache;
+import com.hmdp.utils.RedisBloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_FILTER_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_CHANNEL;
+
+@Slf4j
+@Configuration
+public class RedisConfig {
+
+    /**
+     * 以字节数组读写缓存值，供CacheClient使用不同的编码器
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> bytesRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        return template;
+    }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       LocalCache localCache,
+                                                                       List<RedisBloomFilter> bloomFilters,
+                                                                       IShopTypeService shopTypeService) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        // 订阅缓存失效通知，清理本地一级缓存
+        container.addMessageListener((message, pattern) ->
+                        localCache.onInvalidateMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        // 订阅布隆过滤器的新增通知，消息格式为：过滤器名称:id，id为空表示需要从Redis重新加载
+        container.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            int index = body.indexOf(':');
+            if (index < 0) {
+                log.warn("非法的布隆过滤器通知：{}", body);
+                return;
+            }
+            String name = body.substring(0, index);
+            String id = body.substring(index + 1);
+            for (RedisBloomFilter bloomFilter : bloomFilters) {
+                if (!bloomFilter.getName().equals(name)) {
+                    continue;
+                }
+                if (id.isEmpty()) {
+                    bloomFilter.loadFromRedis();
+                } else {
+                    bloomFilter.putLocal(id);
+                }
+            }
+        }, new ChannelTopic(BLOOM_FILTER_CHANNEL));
+        // 订阅店铺类型的修改通知，重新加载快照
+        container.addMessageListener((message, pattern) -> shopTypeService.refreshSnapshot(),
+                new ChannelTopic(CACHE_SHOP_TYPE_CHANNEL));
+        return container;
+    }
+}
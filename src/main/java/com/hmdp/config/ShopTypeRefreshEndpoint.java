@@ -0,0 +1,25 @@
+package com.hmdp.config;
+
+import com.hmdp.service.IShopTypeService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * 店铺类型修改后通过 POST /actuator/shoptype 通知所有节点重新加载快照，只在管理端口开放
+ */
+@Component
+@Endpoint(id = "shoptype")
+public class ShopTypeRefreshEndpoint {
+
+    private final IShopTypeService shopTypeService;
+
+    public ShopTypeRefreshEndpoint(IShopTypeService shopTypeService) {
+        this.shopTypeService = shopTypeService;
+    }
+
+    @WriteOperation
+    public void refresh() {
+        shopTypeService.publishRefresh();
+    }
+}
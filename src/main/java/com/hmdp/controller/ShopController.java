@@ -6,10 +6,16 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
+import com.hmdp.utils.RawCacheValue;
+import com.hmdp.utils.RedisBloomFilter;
+import com.hmdp.utils.ResultBodyWriter;
 import com.hmdp.utils.SystemConstants;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
 
 /**
  * <p>
@@ -26,17 +32,42 @@ public class ShopController {
     @Resource
     public IShopService shopService;
 
+    @Resource
+    private RedisBloomFilter shopBloomFilter;
+
+    @Resource
+    private ResultBodyWriter resultBodyWriter;
+
     /**
-     * 根据id查询商铺信息
+     * 根据id查询商铺信息，缓存使用wire编码时，命中的数据不经过反序列化，直接写入响应
      *
      * @param id 商铺id
      * @return 商铺详情数据
      */
     @GetMapping("/{id}")
-    public Result queryShopById(@PathVariable("id") Long id) {
+    public Result queryShopById(@PathVariable("id") Long id, HttpServletResponse response) throws IOException {
+        RawCacheValue raw = shopService.queryRawById(id);
+        if (raw != null) {
+            resultBodyWriter.write(response, raw);
+            return null;
+        }
         return shopService.queryById(id);
     }
 
+    /**
+     * 根据id批量查询商铺信息
+     *
+     * @param ids 商铺id，多个用逗号隔开
+     * @return 商铺详情数据列表，顺序与ids一致，不存在的商铺会被忽略
+     */
+    @GetMapping("/batch")
+    public Result queryShopByIds(@RequestParam("ids") List<Long> ids) {
+        if (ids.size() > SystemConstants.MAX_BATCH_SIZE) {
+            return Result.fail("一次最多查询" + SystemConstants.MAX_BATCH_SIZE + "个商铺");
+        }
+        return shopService.queryByIds(ids);
+    }
+
     /**
      * 新增商铺信息
      *
@@ -47,6 +78,8 @@ public class ShopController {
     public Result saveShop(@RequestBody Shop shop) {
         // 写入数据库
         shopService.save(shop);
+        // 加入布隆过滤器
+        shopBloomFilter.put(shop.getId());
         // 返回店铺id
         return Result.ok(shop.getId());
     }
@@ -4,6 +4,7 @@ package com.hmdp.controller;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.RedisBloomFilter;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
@@ -23,6 +24,9 @@ public class VoucherController {
     @Resource
     private IVoucherService voucherService;
 
+    @Resource
+    private RedisBloomFilter voucherBloomFilter;
+
     /**
      * 新增普通券
      * @param voucher 优惠券信息
@@ -30,7 +34,8 @@ public class VoucherController {
      */
     @PostMapping
     public Result addVoucher(@RequestBody Voucher voucher) {
-        voucherService.save(voucher);
+        voucherService.addVoucher(voucher);
+        voucherBloomFilter.put(voucher.getId());
         return Result.ok(voucher.getId());
     }
 
@@ -42,6 +47,7 @@ public class VoucherController {
     @PostMapping("seckill")
     public Result addSeckillVoucher(@RequestBody Voucher voucher) {
         voucherService.addSeckillVoucher(voucher);
+        voucherBloomFilter.put(voucher.getId());
         return Result.ok(voucher.getId());
     }
 
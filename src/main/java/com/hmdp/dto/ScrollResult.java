@@ -8,5 +8,9 @@ import java.util.List;
 public class ScrollResult {
     private List<?> list;
     private Long minTime;
+    /**
+     * 按分数滚动分页时，本页最后一条的分数
+     */
+    private Double minScore;
     private Integer offset;
 }
@@ -0,0 +1,20 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.ShopType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 店铺类型列表的不可变快照
+ * 列表内容变化时才生成新的快照，version递增；body是序列化好的响应体，etag由body的摘要生成，各节点一致
+ */
+@Getter
+@AllArgsConstructor
+public class ShopTypeSnapshot {
+    private final long version;
+    private final List<ShopType> types;
+    private final byte[] body;
+    private final String etag;
+}
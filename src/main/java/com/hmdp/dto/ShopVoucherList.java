@@ -0,0 +1,18 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.Voucher;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 店铺的优惠券列表，作为一个整体缓存
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShopVoucherList {
+    private List<Voucher> vouchers;
+}
@@ -26,6 +26,8 @@ public class VoucherOrder implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    public static final int STATUS_CANCELLED = 4;
+
     /**
      * 主键
      */
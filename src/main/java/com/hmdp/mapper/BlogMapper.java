@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Map;
 
 /**
  * <p>
@@ -13,4 +16,11 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface BlogMapper extends BaseMapper<Blog> {
 
+    /**
+     * 一条UPDATE把一批笔记的点赞数加上各自的增量
+     *
+     * @param deltas 笔记id -> 点赞数增量，不能为空
+     * @return 更新的行数
+     */
+    int increaseLikedBatch(@Param("deltas") Map<Long, Long> deltas);
 }
@@ -2,6 +2,7 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.SeckillVoucher;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
 
 /**
  * <p>
@@ -13,4 +14,21 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface SeckillVoucherMapper extends BaseMapper<SeckillVoucher> {
 
+    /**
+     * 库存足够时一次扣减多个
+     *
+     * @param voucherId 秒杀券id
+     * @param count     扣减的数量
+     * @return 更新的行数，库存不足时为0
+     */
+    int decreaseStock(@Param("voucherId") Long voucherId, @Param("count") int count);
+
+    /**
+     * 归还库存，例如订单超时取消
+     *
+     * @param voucherId 秒杀券id
+     * @param count     归还的数量
+     * @return 更新的行数
+     */
+    int increaseStock(@Param("voucherId") Long voucherId, @Param("count") int count);
 }
@@ -17,4 +17,13 @@ import java.util.List;
 public interface VoucherMapper extends BaseMapper<Voucher> {
 
     List<Voucher> queryVoucherOfShop(@Param("shopId") Long shopId);
+
+    /**
+     * 按id顺序分批查询上架的优惠券及秒杀信息
+     *
+     * @param lastId 上一批最后一个id
+     * @param limit  每批数量
+     * @return
+     */
+    List<Voucher> queryVoucherAfter(@Param("lastId") Long lastId, @Param("limit") int limit);
 }
@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,27 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface VoucherOrderMapper extends BaseMapper<VoucherOrder> {
 
+    /**
+     * 一条多行INSERT写入一批订单，支付方式和状态使用表的默认值
+     *
+     * @param orders 订单，不能为空
+     * @return
+     */
+    int insertBatch(@Param("orders") List<VoucherOrder> orders);
+
+    /**
+     * 查询并锁定其中仍未支付的订单，只返回id、user_id、voucher_id
+     *
+     * @param ids 订单id，不能为空
+     * @return
+     */
+    List<VoucherOrder> selectUnpaidForUpdate(@Param("ids") List<Long> ids);
+
+    /**
+     * 未支付的订单改为已取消
+     *
+     * @param ids 订单id，不能为空
+     * @return 取消的订单数
+     */
+    int cancelUnpaid(@Param("ids") List<Long> ids);
 }
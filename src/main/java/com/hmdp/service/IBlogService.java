@@ -1,5 +1,6 @@
 package com.hmdp.service;
 
+import com.hmdp.dto.Result;
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.extension.service.IService;
 
@@ -13,4 +14,26 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IBlogService extends IService<Blog> {
 
+    /**
+     * 发布笔记
+     */
+    Result saveBlog(Blog blog);
+
+    /**
+     * 热门笔记，按热度从高到低滚动分页
+     *
+     * @param max    上一页返回的minScore，第一页为null
+     * @param offset 上一页返回的offset
+     */
+    Result queryHotBlog(Double max, Integer offset);
+
+    /**
+     * 当前用户点赞，已点赞时取消点赞
+     */
+    Result likeBlog(Long id);
+
+    /**
+     * 最早点赞的count个用户
+     */
+    Result queryBlogLikes(Long id, Integer count);
 }
@@ -2,8 +2,11 @@ package com.hmdp.service;
 
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
+import com.hmdp.utils.RawCacheValue;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -16,5 +19,14 @@ public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id);
 
+    /**
+     * 查询缓存中未解码的店铺数据
+     *
+     * @return 未命中时返回null，需要调用queryById
+     */
+    RawCacheValue queryRawById(Long id);
+
+    Result queryByIds(List<Long> ids);
+
     Result updateShop(Shop shop);
 }
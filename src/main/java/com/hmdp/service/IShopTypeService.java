@@ -1,5 +1,6 @@
 package com.hmdp.service;
 
+import com.hmdp.dto.ShopTypeSnapshot;
 import com.hmdp.entity.ShopType;
 import com.baomidou.mybatisplus.extension.service.IService;
 
@@ -13,4 +14,22 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IShopTypeService extends IService<ShopType> {
 
+    /**
+     * 获取店铺类型列表的当前快照，第一次调用时从数据库加载
+     *
+     * @return
+     */
+    ShopTypeSnapshot snapshot();
+
+    /**
+     * 从数据库重新加载店铺类型列表，内容没有变化时保留原快照
+     *
+     * @return 当前快照
+     */
+    ShopTypeSnapshot refreshSnapshot();
+
+    /**
+     * 通知所有节点重新加载店铺类型列表
+     */
+    void publishRefresh();
 }
@@ -1,10 +1,18 @@
 package com.hmdp.service.impl;
 
+import com.hmdp.dto.Result;
 import com.hmdp.entity.BlogComments;
 import com.hmdp.mapper.BlogCommentsMapper;
 import com.hmdp.service.IBlogCommentsService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IBlogService;
+import com.hmdp.utils.BlogCommentedEvent;
+import com.hmdp.utils.UserHolder;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Resource;
 
 /**
  * <p>
@@ -17,4 +25,33 @@ import org.springframework.stereotype.Service;
 @Service
 public class BlogCommentsServiceImpl extends ServiceImpl<BlogCommentsMapper, BlogComments> implements IBlogCommentsService {
 
+    @Resource
+    private IBlogService blogService;
+
+    @Resource
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Override
+    @Transactional
+    public Result saveComment(BlogComments comment) {
+        // 1.增加笔记的评论数，笔记不存在时不保存评论
+        boolean updated = blogService.update()
+                .setSql("comments = IFNULL(comments, 0) + 1").eq("id", comment.getBlogId()).update();
+        if (!updated) {
+            return Result.fail("笔记不存在");
+        }
+        // 2.保存评论，一级评论的parentId和answerId为0
+        comment.setId(null);
+        comment.setUserId(UserHolder.getUser().getId());
+        if (comment.getParentId() == null) {
+            comment.setParentId(0L);
+        }
+        if (comment.getAnswerId() == null) {
+            comment.setAnswerId(0L);
+        }
+        save(comment);
+        // 3.事务提交后更新热度
+        applicationEventPublisher.publishEvent(new BlogCommentedEvent(comment.getBlogId()));
+        return Result.ok(comment.getId());
+    }
 }
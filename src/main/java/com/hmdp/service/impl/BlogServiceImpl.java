@@ -1,11 +1,42 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.ScrollResult;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
+import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.BlogHotRank;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_DELTA_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_TTL;
+
 /**
  * <p>
  *  服务实现类
@@ -17,4 +48,138 @@ import org.springframework.stereotype.Service;
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
+    private static final DefaultRedisScript<Long> LIKE_SCRIPT;
+
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("blog_like.lua"));
+        LIKE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private IUserService userService;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private BlogHotRank blogHotRank;
+
+    @Override
+    public Result saveBlog(Blog blog) {
+        // 获取登录用户
+        UserDTO user = UserHolder.getUser();
+        blog.setUserId(user.getId());
+        // 保存探店博文
+        save(blog);
+        // 加入热门排行榜
+        blogHotRank.onCreate(blog.getId());
+        // 返回id
+        return Result.ok(blog.getId());
+    }
+
+    @Override
+    public Result likeBlog(Long id) {
+        Long userId = UserHolder.getUser().getId();
+        String key = BLOG_LIKED_KEY + id;
+        // 1.没有人点赞过的笔记，确认笔记存在，避免为不存在的id创建ZSET
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(key)) && getById(id) == null) {
+            return Result.fail("笔记不存在");
+        }
+        // 2.原子地切换点赞状态并记录点赞数的增量，由BlogLikeFlusher批量写回数据库
+        Long liked = stringRedisTemplate.execute(LIKE_SCRIPT, Arrays.asList(key, BLOG_LIKED_DELTA_KEY),
+                userId.toString(), id.toString(), String.valueOf(System.currentTimeMillis()));
+        boolean isLike = liked != null && liked == 1;
+        // 3.更新热度
+        blogHotRank.onLike(id, isLike ? 1 : -1);
+        return Result.ok(isLike);
+    }
+
+    @Override
+    public Result queryHotBlog(Double max, Integer offset) {
+        // 1.从排行榜中读取一页，同时计算下一页的游标
+        BlogHotRank.Page page = blogHotRank.page(max, offset, SystemConstants.MAX_PAGE_SIZE);
+        ScrollResult result = new ScrollResult();
+        List<Long> ids = page.getIds();
+        if (ids.isEmpty()) {
+            result.setList(Collections.emptyList());
+            return Result.ok(result);
+        }
+        // 2.一次MGET查询笔记缓存，未命中的一次IN查询数据库
+        Map<Long, Blog> blogs = cacheClient.queryBatch(CACHE_BLOG_KEY, ids, Blog.class,
+                ids2 -> listByIds(ids2).stream().collect(Collectors.toMap(Blog::getId, Function.identity())),
+                CACHE_BLOG_TTL, TimeUnit.MINUTES);
+        // 缓存中的对象可能被本地缓存共享，复制后再填充当前用户相关的字段
+        List<Blog> list = blogs.values().stream()
+                .map(blog -> BeanUtil.copyProperties(blog, Blog.class))
+                .collect(Collectors.toList());
+        fillBlogs(list);
+        result.setList(list);
+        result.setMinScore(page.getMinScore());
+        result.setOffset(page.getOffset());
+        return Result.ok(result);
+    }
+
+    /**
+     * 填充作者、最新的点赞数和当前用户是否点赞
+     */
+    private void fillBlogs(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        // 作者一次查询
+        Set<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toSet());
+        Map<Long, User> users = userService.listByIds(userIds).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        // 缓存中的点赞数可能过时，使用排行榜中的统计
+        List<Long> ids = blogs.stream().map(Blog::getId).collect(Collectors.toList());
+        Map<Long, Integer> liked = blogHotRank.likedOf(ids);
+        // 已登录时通过管道查询是否点赞
+        UserDTO current = UserHolder.getUser();
+        List<Object> scores = current == null ? null : stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            byte[] member = current.getId().toString().getBytes(StandardCharsets.UTF_8);
+            for (Long id : ids) {
+                connection.zScore((BLOG_LIKED_KEY + id).getBytes(StandardCharsets.UTF_8), member);
+            }
+            return null;
+        });
+        for (int i = 0; i < blogs.size(); i++) {
+            Blog blog = blogs.get(i);
+            User user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+            Integer count = liked.get(blog.getId());
+            if (count != null) {
+                blog.setLiked(count);
+            }
+            blog.setIsLike(scores != null && scores.get(i) != null);
+        }
+    }
+
+    @Override
+    public Result queryBlogLikes(Long id, Integer count) {
+        int n = Math.max(1, Math.min(count, SystemConstants.MAX_PAGE_SIZE));
+        // 1.按点赞时间取最早的n个用户
+        Set<String> members = stringRedisTemplate.opsForZSet().range(BLOG_LIKED_KEY + id, 0, n - 1);
+        if (members == null || members.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        List<Long> ids = members.stream().map(Long::valueOf).collect(Collectors.toList());
+        // 2.一次查询所有用户，按点赞顺序返回
+        Map<Long, User> users = userService.listByIds(ids).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        List<UserDTO> result = new ArrayList<>(ids.size());
+        for (Long userId : ids) {
+            User user = users.get(userId);
+            if (user != null) {
+                result.add(BeanUtil.copyProperties(user, UserDTO.class));
+            }
+        }
+        return Result.ok(result);
+    }
 }
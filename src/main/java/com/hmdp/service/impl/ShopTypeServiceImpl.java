@@ -1,11 +1,25 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.crypto.digest.DigestUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopTypeSnapshot;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_CHANNEL;
+
 /**
  * <p>
  *  服务实现类
@@ -14,7 +28,60 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private volatile ShopTypeSnapshot snapshot;
+
+    @Override
+    public ShopTypeSnapshot snapshot() {
+        ShopTypeSnapshot current = snapshot;
+        return current != null ? current : refreshSnapshot();
+    }
+
+    @Override
+    public synchronized ShopTypeSnapshot refreshSnapshot() {
+        List<ShopType> types = query().orderByAsc("sort").list();
+        byte[] body;
+        try {
+            // 使用与Spring MVC相同的ObjectMapper，响应内容与直接返回Result一致
+            body = objectMapper.writeValueAsBytes(Result.ok(types));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        String etag = "\"" + DigestUtil.md5Hex(body) + "\"";
+        ShopTypeSnapshot current = snapshot;
+        if (current != null && current.getEtag().equals(etag)) {
+            return current;
+        }
+        long version = current == null ? 1 : current.getVersion() + 1;
+        snapshot = new ShopTypeSnapshot(version, Collections.unmodifiableList(types), body, etag);
+        log.info("店铺类型快照更新，版本：{}，etag：{}", version, etag);
+        return snapshot;
+    }
+
+    @Override
+    public void publishRefresh() {
+        stringRedisTemplate.convertAndSend(CACHE_SHOP_TYPE_CHANNEL, "");
+    }
+
+    /**
+     * 定时重新加载，兜底没有收到通知的修改
+     */
+    @Scheduled(initialDelayString = "${hmdp.shop-type.refresh-interval-ms:300000}",
+            fixedDelayString = "${hmdp.shop-type.refresh-interval-ms:300000}")
+    public void scheduledRefresh() {
+        try {
+            refreshSnapshot();
+        } catch (Exception e) {
+            log.error("店铺类型快照定时刷新失败", e);
+        }
+    }
 }
@@ -1,11 +1,26 @@
 package com.hmdp.service.impl;
 
+import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.LocalStockPool;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillGate;
+import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.VoucherOrderWriter;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.util.Arrays;
+
+import static com.hmdp.utils.RedisConstants.*;
+
 /**
  * <p>
  *  服务实现类
@@ -17,4 +32,96 @@ import org.springframework.stereotype.Service;
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
 
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 脚本返回值对应的提示，下标为返回值，0表示成功
+     */
+    private static final String[] SECKILL_ERRORS = {null, "库存不足", "不能重复下单", "秒杀尚未开始", "秒杀已经结束", "秒杀券不存在"};
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisIdWorker redisIdWorker;
+
+    @Resource
+    private VoucherOrderWriter voucherOrderWriter;
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    @Resource
+    private LocalStockPool localStockPool;
+
+    @Resource
+    private SeckillGate seckillGate;
+
+    @Override
+    public Result seckillVoucher(Long voucherId) {
+        Long userId = UserHolder.getUser().getId();
+        // 0.时间窗口之外和刚刚售罄的请求在本地直接拒绝，不访问redis
+        int gate = seckillGate.check(voucherId);
+        if (gate != SeckillGate.OK) {
+            return Result.fail(SECKILL_ERRORS[gate]);
+        }
+        String stockKey = SECKILL_STOCK_KEY + voucherId;
+        hotKeyDetector.record(stockKey);
+        if (localStockPool.isEnabled()) {
+            return seckillWithLocalStock(voucherId, userId);
+        }
+        long orderId = redisIdWorker.nextId("order");
+        // 1.执行lua脚本，原子地判断时间窗口、库存和一人一单，扣减库存并把订单发送到消息队列
+        Long result = stringRedisTemplate.execute(SECKILL_SCRIPT,
+                Arrays.asList(stockKey, SECKILL_META_KEY + voucherId, SECKILL_ORDER_KEY + voucherId, SECKILL_ORDER_STREAM),
+                userId.toString(), String.valueOf(System.currentTimeMillis()), voucherId.toString(), String.valueOf(orderId));
+        int r = result == null ? SECKILL_ERRORS.length - 1 : result.intValue();
+        // 2.判断结果是否为0
+        if (r != 0) {
+            // 2.1 不为0，代表没有购买资格
+            if (r == SeckillGate.SOLD_OUT) {
+                seckillGate.markSoldOut(voucherId);
+            }
+            return Result.fail(SECKILL_ERRORS[r]);
+        }
+        // 2.2 为0，有购买资格，订单已经进入消息队列，由VoucherOrderWriter异步写入数据库
+        // 3.返回订单id
+        return Result.ok(orderId);
+    }
+
+    /**
+     * 使用本地库存令牌：售罄和时间窗口在本节点内判断，只有拿到令牌的请求才访问redis做一人一单判断
+     */
+    private Result seckillWithLocalStock(Long voucherId, Long userId) {
+        // 1.获取本地令牌，令牌用完时从redis批量租用
+        int r = localStockPool.acquire(voucherId);
+        if (r != LocalStockPool.OK) {
+            return Result.fail(SECKILL_ERRORS[r]);
+        }
+        // 2.一人一单，重复下单时把令牌还回本地
+        Long added = stringRedisTemplate.opsForSet().add(SECKILL_ORDER_KEY + voucherId, userId.toString());
+        if (added == null || added == 0) {
+            localStockPool.release(voucherId);
+            return Result.fail(SECKILL_ERRORS[2]);
+        }
+        // 3.发送到消息队列，由VoucherOrderWriter异步写入数据库
+        VoucherOrder voucherOrder = new VoucherOrder()
+                .setId(redisIdWorker.nextId("order"))
+                .setUserId(userId)
+                .setVoucherId(voucherId);
+        try {
+            voucherOrderWriter.publish(voucherOrder);
+        } catch (RuntimeException e) {
+            // 归还到redis中的库存和下单资格
+            voucherOrderWriter.release(voucherOrder);
+            throw e;
+        }
+        return Result.ok(voucherOrder.getId());
+    }
 }
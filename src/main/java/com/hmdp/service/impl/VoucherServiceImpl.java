@@ -1,17 +1,38 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopVoucherList;
 import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidateEvent;
+import com.hmdp.utils.RedisBloomFilter;
+import com.hmdp.utils.SeckillVoucherCreatedEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -27,12 +48,83 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private ISeckillVoucherService seckillVoucherService;
 
+    @Resource
+    private RedisBloomFilter shopBloomFilter;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ApplicationEventPublisher applicationEventPublisher;
+
     @Override
     public Result queryVoucherOfShop(Long shopId) {
-        // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
-        // 返回结果
-        return Result.ok(vouchers);
+        // 店铺一定不存在，直接返回空列表
+        if (!shopBloomFilter.mightContain(shopId)) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 1.查询缓存的优惠券信息，未命中时才执行联表查询
+        ShopVoucherList cached = cacheClient.query(CACHE_SHOP_VOUCHER_KEY, shopId, ShopVoucherList.class,
+                id -> new ShopVoucherList(getBaseMapper().queryVoucherOfShop(id)),
+                CACHE_SHOP_VOUCHER_TTL, TimeUnit.MINUTES);
+        if (cached == null || cached.getVouchers() == null) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 2.用redis中的实时库存和秒杀时间覆盖缓存中的值
+        return Result.ok(overlaySeckill(cached.getVouchers()));
+    }
+
+    /**
+     * 通过一次管道读取秒杀券在redis中的库存和秒杀时间，覆盖到优惠券的副本上
+     * 缓存中的对象可能被本地缓存共享，不能直接修改
+     */
+    private List<Voucher> overlaySeckill(List<Voucher> vouchers) {
+        List<Voucher> seckills = vouchers.stream().filter(v -> v.getStock() != null).collect(Collectors.toList());
+        if (seckills.isEmpty()) {
+            return vouchers;
+        }
+        List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Voucher voucher : seckills) {
+                connection.get((SECKILL_STOCK_KEY + voucher.getId()).getBytes(StandardCharsets.UTF_8));
+                connection.hMGet((SECKILL_META_KEY + voucher.getId()).getBytes(StandardCharsets.UTF_8),
+                        "begin".getBytes(StandardCharsets.UTF_8), "end".getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        Map<Long, Voucher> overlaid = new HashMap<>();
+        for (int i = 0; i < seckills.size(); i++) {
+            Voucher voucher = BeanUtil.copyProperties(seckills.get(i), Voucher.class);
+            String stock = (String) values.get(i * 2);
+            if (stock != null) {
+                voucher.setStock(Integer.valueOf(stock));
+            }
+            List<?> meta = (List<?>) values.get(i * 2 + 1);
+            if (meta != null && meta.get(0) != null && meta.get(1) != null) {
+                voucher.setBeginTime(toLocalDateTime((String) meta.get(0)));
+                voucher.setEndTime(toLocalDateTime((String) meta.get(1)));
+            }
+            overlaid.put(voucher.getId(), voucher);
+        }
+        List<Voucher> result = new ArrayList<>(vouchers.size());
+        for (Voucher voucher : vouchers) {
+            result.add(overlaid.getOrDefault(voucher.getId(), voucher));
+        }
+        return result;
+    }
+
+    private static LocalDateTime toLocalDateTime(String epochMilli) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(epochMilli)), ZoneId.systemDefault());
+    }
+
+    @Override
+    @Transactional
+    public void addVoucher(Voucher voucher) {
+        save(voucher);
+        // 事务提交后删除店铺的优惠券缓存
+        applicationEventPublisher.publishEvent(new CacheInvalidateEvent(CACHE_SHOP_VOUCHER_KEY + voucher.getShopId()));
     }
 
     @Override
@@ -47,5 +139,8 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
+        // 事务提交后删除店铺的优惠券缓存，并预热库存和秒杀时间
+        applicationEventPublisher.publishEvent(new CacheInvalidateEvent(CACHE_SHOP_VOUCHER_KEY + voucher.getShopId()));
+        applicationEventPublisher.publishEvent(new SeckillVoucherCreatedEvent(seckillVoucher));
     }
 }
@@ -0,0 +1,401 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 基于类结构的紧凑二进制编码器
+ * 字段按名称排序后依次写入，不写字段名；整数使用变长编码，超过阈值的字符串使用Deflate压缩
+ * 数据开头写入类结构的哈希值，实体字段变化后旧数据按缓存未命中处理
+ */
+@Component
+public class BinaryCacheCodec implements CacheCodec {
+
+    public static final String NAME = "binary";
+
+    private static final byte STRING_PLAIN = 0;
+    private static final byte STRING_DEFLATED = 1;
+
+    /**
+     * 字符串的UTF-8字节数超过该值时尝试压缩
+     */
+    private final int compressThreshold;
+
+    private final ConcurrentHashMap<Class<?>, Schema> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * Deflater和Inflater创建的开销较大，每个线程复用一个
+     */
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    public BinaryCacheCodec(@Value("${hmdp.cache.codec.compress-threshold:128}") int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte id() {
+        return 1;
+    }
+
+    @Override
+    public byte version() {
+        return 1;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        Schema schema = schemaOf(value.getClass());
+        Output out = new Output(128);
+        out.writeInt(schema.hash);
+        // 1.写入null位图
+        int bitmapStart = out.position;
+        out.skip((schema.fields.length + 7) / 8);
+        // 2.依次写入非null字段
+        try {
+            for (int i = 0; i < schema.fields.length; i++) {
+                Object fieldValue = schema.fields[i].get(value);
+                if (fieldValue == null) {
+                    out.buf[bitmapStart + i / 8] |= (byte) (1 << (i % 8));
+                    continue;
+                }
+                writeField(out, schema.types[i], fieldValue);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, int offset, int length, Class<T> type) {
+        Schema schema = schemaOf(type);
+        Input in = new Input(bytes, offset);
+        try {
+            if (in.readInt() != schema.hash) {
+                return null;
+            }
+            int bitmapStart = in.position;
+            in.position += (schema.fields.length + 7) / 8;
+            T value = type.cast(schema.constructor.newInstance());
+            for (int i = 0; i < schema.fields.length; i++) {
+                if ((bytes[bitmapStart + i / 8] & (1 << (i % 8))) != 0) {
+                    continue;
+                }
+                schema.fields[i].set(value, readField(in, schema.types[i]));
+            }
+            return value;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        } catch (DataFormatException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            // 数据被截断或损坏，按缓存未命中处理
+            return null;
+        }
+    }
+
+    /**
+     * 判断类型是否可以使用该编码器
+     *
+     * @param type
+     * @return
+     */
+    public boolean supports(Class<?> type) {
+        try {
+            schemaOf(type);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private void writeField(Output out, FieldType type, Object value) {
+        switch (type) {
+            case LONG:
+                out.writeVarLong(zigzag((Long) value));
+                break;
+            case INT:
+                out.writeVarLong(zigzag((Integer) value));
+                break;
+            case DOUBLE:
+                out.writeLong(Double.doubleToRawLongBits((Double) value));
+                break;
+            case BOOLEAN:
+                out.writeByte((Boolean) value ? 1 : 0);
+                break;
+            case DATETIME:
+                LocalDateTime time = (LocalDateTime) value;
+                out.writeVarLong(zigzag(time.toEpochSecond(ZoneOffset.UTC)));
+                out.writeVarLong(time.getNano());
+                break;
+            default:
+                writeString(out, (String) value);
+        }
+    }
+
+    private Object readField(Input in, FieldType type) throws DataFormatException {
+        switch (type) {
+            case LONG:
+                return unzigzag(in.readVarLong());
+            case INT:
+                return (int) unzigzag(in.readVarLong());
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case BOOLEAN:
+                return in.readByte() != 0;
+            case DATETIME:
+                long seconds = unzigzag(in.readVarLong());
+                return LocalDateTime.ofEpochSecond(seconds, (int) in.readVarLong(), ZoneOffset.UTC);
+            default:
+                return readString(in);
+        }
+    }
+
+    private void writeString(Output out, String value) {
+        byte[] raw = value.getBytes(StandardCharsets.UTF_8);
+        if (raw.length > compressThreshold) {
+            Deflater deflater = DEFLATER.get();
+            try {
+                deflater.setInput(raw);
+                deflater.finish();
+                byte[] compressed = new byte[raw.length];
+                int size = deflater.deflate(compressed);
+                // 压缩后没有变小则不压缩
+                if (deflater.finished() && size < raw.length) {
+                    out.writeByte(STRING_DEFLATED);
+                    out.writeVarLong(raw.length);
+                    out.writeVarLong(size);
+                    out.writeBytes(compressed, size);
+                    return;
+                }
+            } finally {
+                deflater.reset();
+            }
+        }
+        out.writeByte(STRING_PLAIN);
+        out.writeVarLong(raw.length);
+        out.writeBytes(raw, raw.length);
+    }
+
+    private String readString(Input in) throws DataFormatException {
+        byte flag = in.readByte();
+        int rawLength = (int) in.readVarLong();
+        if (flag == STRING_PLAIN) {
+            String value = new String(in.bytes, in.position, rawLength, StandardCharsets.UTF_8);
+            in.position += rawLength;
+            return value;
+        }
+        int size = (int) in.readVarLong();
+        Inflater inflater = INFLATER.get();
+        try {
+            inflater.setInput(in.bytes, in.position, size);
+            byte[] raw = new byte[rawLength];
+            inflater.inflate(raw);
+            in.position += size;
+            return new String(raw, StandardCharsets.UTF_8);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private Schema schemaOf(Class<?> type) {
+        Schema schema = schemas.get(type);
+        if (schema == null) {
+            schema = new Schema(type);
+            schemas.putIfAbsent(type, schema);
+        }
+        return schema;
+    }
+
+    private enum FieldType {
+        LONG, INT, DOUBLE, BOOLEAN, STRING, DATETIME
+    }
+
+    /**
+     * 类结构：参与编码的字段及其类型
+     */
+    private static class Schema {
+        private final Constructor<?> constructor;
+        private final Field[] fields;
+        private final FieldType[] types;
+        private final int hash;
+
+        Schema(Class<?> type) {
+            List<Field> list = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                        list.add(field);
+                    }
+                }
+            }
+            list.sort(Comparator.comparing(Field::getName));
+            this.fields = list.toArray(new Field[0]);
+            this.types = new FieldType[fields.length];
+            StringBuilder signature = new StringBuilder(type.getName());
+            for (int i = 0; i < fields.length; i++) {
+                fields[i].setAccessible(true);
+                types[i] = typeOf(fields[i]);
+                signature.append(';').append(fields[i].getName()).append(':').append(types[i]);
+            }
+            this.hash = signature.toString().hashCode();
+            try {
+                this.constructor = type.getDeclaredConstructor();
+                this.constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException(type.getName() + "缺少无参构造函数", e);
+            }
+        }
+
+        private static FieldType typeOf(Field field) {
+            Class<?> type = field.getType();
+            if (type == Long.class) {
+                return FieldType.LONG;
+            }
+            if (type == Integer.class) {
+                return FieldType.INT;
+            }
+            if (type == Double.class) {
+                return FieldType.DOUBLE;
+            }
+            if (type == Boolean.class) {
+                return FieldType.BOOLEAN;
+            }
+            if (type == String.class) {
+                return FieldType.STRING;
+            }
+            if (type == LocalDateTime.class) {
+                return FieldType.DATETIME;
+            }
+            throw new IllegalArgumentException("不支持的字段类型：" + field);
+        }
+    }
+
+    private static class Output {
+        private byte[] buf;
+        private int position;
+
+        Output(int capacity) {
+            this.buf = new byte[capacity];
+        }
+
+        private void ensure(int size) {
+            if (position + size > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, position + size));
+            }
+        }
+
+        void skip(int size) {
+            ensure(size);
+            position += size;
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buf[position++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            for (int i = 3; i >= 0; i--) {
+                buf[position++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int i = 7; i >= 0; i--) {
+                buf[position++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[position++] = (byte) value;
+        }
+
+        void writeBytes(byte[] bytes, int length) {
+            ensure(length);
+            System.arraycopy(bytes, 0, buf, position, length);
+            position += length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, position);
+        }
+    }
+
+    private static class Input {
+        private final byte[] bytes;
+        private int position;
+
+        Input(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        byte readByte() {
+            return bytes[position++];
+        }
+
+        int readInt() {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.hmdp.utils;
+
+import lombok.Getter;
+
+/**
+ * 笔记评论事件
+ * 在保存评论的事务中发布，事务提交后由BlogHotRank更新热度，回滚时不更新
+ */
+@Getter
+public class BlogCommentedEvent {
+
+    private final Long blogId;
+
+    public BlogCommentedEvent(Long blogId) {
+        this.blogId = blogId;
+    }
+}
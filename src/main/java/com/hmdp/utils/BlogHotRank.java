@@ -0,0 +1,405 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.mapper.BlogMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_STAT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_DELTA_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_FLUSHING_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_BLOG_HOT_KEY;
+
+/**
+ * 热门笔记排行榜
+ * 排行榜为ZSET（BLOG_HOT_KEY），每篇笔记的点赞数、评论数和发布时间记录在BLOG_HOT_STAT_KEY中；
+ * 点赞、评论、发布笔记时通过blog_hot.lua原子地更新统计并按HotDecay计算分数，分页直接读取ZSET，不需要对tb_blog排序。
+ * 排行榜只保留分数最高的max-size篇笔记，不在榜上的笔记发生事件时从数据库读取一次统计后加入；
+ * 启动时排行榜不存在则按id倒序加载最近发布的笔记
+ */
+@Slf4j
+@Component
+public class BlogHotRank implements ApplicationRunner {
+
+    private static final DefaultRedisScript<List<Object>> HOT_SCRIPT = RedisScripts.listScript("blog_hot.lua");
+
+    private static final List<String> KEYS = Arrays.asList(BLOG_HOT_KEY, BLOG_HOT_STAT_KEY);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final BlogMapper blogMapper;
+    private final RedisLock redisLock;
+    private final HotDecay decay;
+    private final long halfLifeMillis;
+    private final double gravity;
+    private final double likeWeight;
+    private final double commentWeight;
+    private final int maxSize;
+    private final int batchSize;
+
+    private final LongAdder updated = new LongAdder();
+    private final LongAdder loaded = new LongAdder();
+    private final LongAdder rescored = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public BlogHotRank(StringRedisTemplate stringRedisTemplate, BlogMapper blogMapper, RedisLock redisLock,
+                       MeterRegistry registry,
+                       @Value("${hmdp.blog.hot.decay:exponential}") String decay,
+                       @Value("${hmdp.blog.hot.half-life-ms:86400000}") long halfLifeMillis,
+                       @Value("${hmdp.blog.hot.gravity:1.8}") double gravity,
+                       @Value("${hmdp.blog.hot.like-weight:1}") double likeWeight,
+                       @Value("${hmdp.blog.hot.comment-weight:2}") double commentWeight,
+                       @Value("${hmdp.blog.hot.max-size:10000}") int maxSize,
+                       @Value("${hmdp.blog.hot.batch-size:500}") int batchSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.blogMapper = blogMapper;
+        this.redisLock = redisLock;
+        this.decay = HotDecay.of(decay);
+        this.halfLifeMillis = halfLifeMillis;
+        this.gravity = gravity;
+        this.likeWeight = likeWeight;
+        this.commentWeight = commentWeight;
+        this.maxSize = maxSize;
+        this.batchSize = batchSize;
+        FunctionCounter.builder("blog.hot.updated", this, BlogHotRank::updatedCount).register(registry);
+        FunctionCounter.builder("blog.hot.failed", this, BlogHotRank::failedCount).register(registry);
+    }
+
+    /**
+     * 点赞或取消点赞之后调用
+     *
+     * @param delta 1为点赞，-1为取消点赞
+     */
+    public void onLike(Long blogId, int delta) {
+        update(blogId, delta, 0);
+    }
+
+    /**
+     * 评论写入数据库之后调用
+     */
+    public void onComment(Long blogId) {
+        update(blogId, 0, 1);
+    }
+
+    /**
+     * 保存评论的事务提交后更新热度，回滚的评论不计入
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCommented(BlogCommentedEvent event) {
+        onComment(event.getBlogId());
+    }
+
+    /**
+     * 笔记写入数据库之后调用
+     */
+    public void onCreate(Long blogId) {
+        try {
+            Map<Long, long[]> seeds = new HashMap<>();
+            seeds.put(blogId, new long[]{0, 0, System.currentTimeMillis()});
+            execute(Collections.singletonMap(blogId, new long[2]), seeds);
+            updated.increment();
+        } catch (Exception e) {
+            // 排行榜只影响排序，失败时不影响发布
+            failed.increment();
+            log.warn("新笔记{}加入热门排行榜失败", blogId, e);
+        }
+    }
+
+    private void update(Long blogId, long likes, long comments) {
+        try {
+            Map<Long, long[]> deltas = Collections.singletonMap(blogId, new long[]{likes, comments});
+            List<Long> missing = execute(deltas, Collections.emptyMap());
+            if (!missing.isEmpty()) {
+                // 不在榜上：读取数据库中的统计，已经包含本次事件
+                execute(deltas, loadStats(missing));
+            }
+            updated.increment();
+        } catch (Exception e) {
+            failed.increment();
+            log.warn("更新笔记{}的热度失败", blogId, e);
+        }
+    }
+
+    /**
+     * 按分数从高到低分页
+     *
+     * @param max    上一页最后一篇笔记的分数，第一页为null
+     * @param offset 上一页中与max分数相同的笔记数，需要跳过
+     * @param count  每页数量
+     * @return 本页的笔记id和下一页的游标
+     */
+    public Page page(Double max, int offset, int count) {
+        // 1.读取一页，分数不大于max，跳过分数等于max的前offset篇
+        Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet().reverseRangeByScoreWithScores(
+                BLOG_HOT_KEY, Double.NEGATIVE_INFINITY, max == null ? Double.POSITIVE_INFINITY : max, offset, count);
+        if (tuples == null || tuples.isEmpty()) {
+            return new Page(Collections.emptyList(), 0, 0);
+        }
+        // 2.计算下一页的游标：最后一篇的分数，以及本页中分数与它相同的笔记数
+        List<Long> ids = new ArrayList<>(tuples.size());
+        double minScore = 0;
+        int os = 0;
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            ids.add(Long.valueOf(tuple.getValue()));
+            double score = tuple.getScore();
+            if (os > 0 && score == minScore) {
+                os++;
+            } else {
+                minScore = score;
+                os = 1;
+            }
+        }
+        // 整页的分数都等于max时，还要跳过上一页已经跳过的笔记
+        if (max != null && minScore == max && os == ids.size()) {
+            os += offset;
+        }
+        return new Page(ids, minScore, os);
+    }
+
+    /**
+     * 排行榜的一页
+     */
+    public static class Page {
+        private final List<Long> ids;
+        private final double minScore;
+        private final int offset;
+
+        Page(List<Long> ids, double minScore, int offset) {
+            this.ids = ids;
+            this.minScore = minScore;
+            this.offset = offset;
+        }
+
+        /**
+         * 按分数从高到低排列的笔记id，没有更多时为空
+         */
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        /**
+         * 下一页的max
+         */
+        public double getMinScore() {
+            return minScore;
+        }
+
+        /**
+         * 下一页的offset
+         */
+        public int getOffset() {
+            return offset;
+        }
+    }
+
+    /**
+     * 榜上笔记的点赞数，比缓存中的笔记和数据库中的liked更新；不在榜上的笔记不出现在结果中
+     */
+    public Map<Long, Integer> likedOf(List<Long> ids) {
+        List<Object> stats = stringRedisTemplate.opsForHash().multiGet(BLOG_HOT_STAT_KEY,
+                ids.stream().map(String::valueOf).collect(Collectors.toList()));
+        Map<Long, Integer> liked = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Object stat = stats.get(i);
+            if (stat != null) {
+                liked.put(ids.get(i), Integer.valueOf(stat.toString().split(":")[0]));
+            }
+        }
+        return liked;
+    }
+
+    /**
+     * 执行blog_hot.lua
+     *
+     * @param deltas 笔记id -> {点赞数增量, 评论数增量}
+     * @param seeds  不在榜上的笔记的初始值：笔记id -> {点赞数, 评论数, 发布时间戳}
+     * @return 不在榜上且没有初始值的笔记
+     */
+    private List<Long> execute(Map<Long, long[]> deltas, Map<Long, long[]> seeds) {
+        List<String> args = new ArrayList<>(7 + deltas.size() * 6);
+        args.add(decay.scriptName());
+        args.add(String.valueOf(halfLifeMillis));
+        args.add(String.valueOf(gravity));
+        args.add(String.valueOf(likeWeight));
+        args.add(String.valueOf(commentWeight));
+        args.add(String.valueOf(System.currentTimeMillis()));
+        args.add(String.valueOf(maxSize));
+        deltas.forEach((id, delta) -> {
+            long[] seed = seeds.get(id);
+            args.add(id.toString());
+            args.add(String.valueOf(delta[0]));
+            args.add(String.valueOf(delta[1]));
+            args.add(seed == null ? "" : String.valueOf(seed[0]));
+            args.add(seed == null ? "" : String.valueOf(seed[1]));
+            args.add(seed == null ? "" : String.valueOf(seed[2]));
+        });
+        List<Object> missing = stringRedisTemplate.execute(HOT_SCRIPT, KEYS, args.toArray());
+        if (missing == null || missing.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return missing.stream().map(id -> Long.valueOf(id.toString())).collect(Collectors.toList());
+    }
+
+    /**
+     * 从数据库读取统计，点赞数加上redis中还没有写回的增量
+     */
+    private Map<Long, long[]> loadStats(Collection<Long> ids) {
+        List<Blog> blogs = blogMapper.selectList(new QueryWrapper<Blog>()
+                .select("id", "liked", "comments", "create_time").in("id", ids));
+        List<Object> fields = ids.stream().map(String::valueOf).collect(Collectors.toList());
+        List<Object> pending = stringRedisTemplate.opsForHash().multiGet(BLOG_LIKED_DELTA_KEY, fields);
+        List<Object> flushing = stringRedisTemplate.opsForHash().multiGet(BLOG_LIKED_FLUSHING_KEY, fields);
+        Map<Long, Long> unflushed = new HashMap<>();
+        int i = 0;
+        for (Long id : ids) {
+            unflushed.put(id, parse(pending.get(i)) + parse(flushing.get(i)));
+            i++;
+        }
+        Map<Long, long[]> seeds = new HashMap<>();
+        for (Blog blog : blogs) {
+            seeds.put(blog.getId(), seedOf(blog, unflushed.getOrDefault(blog.getId(), 0L)));
+        }
+        return seeds;
+    }
+
+    private static long[] seedOf(Blog blog, long unflushed) {
+        long liked = blog.getLiked() == null ? 0 : blog.getLiked();
+        long comments = blog.getComments() == null ? 0 : blog.getComments();
+        LocalDateTime createTime = blog.getCreateTime();
+        long created = createTime == null ? System.currentTimeMillis()
+                : createTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return new long[]{Math.max(liked + unflushed, 0), comments, created};
+    }
+
+    private static long parse(Object value) {
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        // 榜单只影响排序，加载失败不能阻止应用启动，等下一次事件发生时再加载
+        try {
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_HOT_KEY))) {
+                return;
+            }
+            RedisLock.Lease lease = redisLock.tryLock(LOCK_BLOG_HOT_KEY);
+            if (lease == null) {
+                log.info("其它节点正在加载热门排行榜，本节点跳过");
+                return;
+            }
+            try {
+                if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_HOT_KEY))) {
+                    load();
+                }
+            } finally {
+                lease.unlock();
+            }
+        } catch (Exception e) {
+            failed.increment();
+            log.error("加载热门排行榜失败", e);
+        }
+    }
+
+    /**
+     * 按主键倒序加载最近发布的max-size篇笔记，衰减之后较早的笔记很难进入榜单
+     */
+    private void load() {
+        long lastId = Long.MAX_VALUE;
+        int total = 0;
+        while (total < maxSize) {
+            List<Blog> blogs = blogMapper.selectList(new QueryWrapper<Blog>()
+                    .select("id", "liked", "comments", "create_time")
+                    .lt("id", lastId).orderByDesc("id")
+                    .last("LIMIT " + Math.min(batchSize, maxSize - total)));
+            if (blogs.isEmpty()) {
+                break;
+            }
+            Map<Long, long[]> deltas = new LinkedHashMap<>();
+            blogs.forEach(blog -> deltas.put(blog.getId(), new long[2]));
+            execute(deltas, loadStats(deltas.keySet()));
+            total += blogs.size();
+            lastId = blogs.get(blogs.size() - 1).getId();
+        }
+        loaded.add(total);
+        log.info("热门排行榜加载完成，笔记数：{}", total);
+    }
+
+    /**
+     * 重力衰减的分数随时间变化，定期按当前时间重新计算；其它衰减函数的分数只在事件发生时变化，不需要重新计算
+     */
+    @Scheduled(initialDelayString = "${hmdp.blog.hot.rescore-interval-ms:60000}",
+            fixedDelayString = "${hmdp.blog.hot.rescore-interval-ms:60000}")
+    public void rescore() {
+        if (decay != HotDecay.GRAVITY) {
+            return;
+        }
+        RedisLock.Lease lease = redisLock.tryLock(LOCK_BLOG_HOT_KEY);
+        if (lease == null) {
+            return;
+        }
+        try {
+            Set<String> members = stringRedisTemplate.opsForZSet().range(BLOG_HOT_KEY, 0, -1);
+            if (members == null) {
+                return;
+            }
+            List<Long> ids = members.stream().map(Long::valueOf).collect(Collectors.toList());
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                Map<Long, long[]> deltas = new LinkedHashMap<>();
+                ids.subList(from, Math.min(from + batchSize, ids.size())).forEach(id -> deltas.put(id, new long[2]));
+                // 期间被移出榜单的笔记返回为缺失，不再加入
+                execute(deltas, Collections.emptyMap());
+            }
+            rescored.add(ids.size());
+        } catch (Exception e) {
+            // 不能抛出异常，否则定时任务会停止
+            failed.increment();
+            log.error("重新计算热门笔记分数失败", e);
+        } finally {
+            lease.unlock();
+        }
+    }
+
+    public long updatedCount() {
+        return updated.sum();
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("decay", decay.name());
+        map.put("updated", updated.sum());
+        map.put("loaded", loaded.sum());
+        map.put("rescored", rescored.sum());
+        map.put("failed", failed.sum());
+        return map;
+    }
+}
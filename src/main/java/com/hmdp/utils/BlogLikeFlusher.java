@@ -0,0 +1,126 @@
+package com.hmdp.utils;
+
+import com.hmdp.mapper.BlogMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_DELTA_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_FLUSHING_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_BLOG_LIKED_FLUSH_KEY;
+
+/**
+ * 把redis中累计的点赞数增量定期写回tb_blog.liked
+ * 点赞时在同一个lua脚本中对BLOG_LIKED_DELTA_KEY（HASH，field为笔记id）执行HINCRBY，同一篇笔记的多次点赞合并为一个增量；
+ * 写回时持有分布式锁，先把增量改名为BLOG_LIKED_FLUSHING_KEY，之后的点赞记录到新的HASH中，
+ * 再按批在一个事务中执行多行UPDATE，提交后删除。写回失败或节点宕机时FLUSHING_KEY保留，下次优先写回，增量不会丢失；
+ * 只有事务提交后、删除之前宕机时会重复写回这一批
+ */
+@Slf4j
+@Component
+public class BlogLikeFlusher {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final BlogMapper blogMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final RedisLock redisLock;
+    private final int batchSize;
+
+    private final LongAdder flushed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public BlogLikeFlusher(StringRedisTemplate stringRedisTemplate, BlogMapper blogMapper,
+                           TransactionTemplate transactionTemplate, RedisLock redisLock, MeterRegistry registry,
+                           @Value("${hmdp.blog.like.batch-size:500}") int batchSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.blogMapper = blogMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.redisLock = redisLock;
+        this.batchSize = batchSize;
+        FunctionCounter.builder("blog.like.flushed", this, BlogLikeFlusher::flushedCount).register(registry);
+        FunctionCounter.builder("blog.like.flush.failed", this, BlogLikeFlusher::failedCount).register(registry);
+    }
+
+    @Scheduled(initialDelayString = "${hmdp.blog.like.flush-interval-ms:5000}",
+            fixedDelayString = "${hmdp.blog.like.flush-interval-ms:5000}")
+    public void flush() {
+        // 多个节点同时只有一个写回，其它节点跳过本次
+        RedisLock.Lease lease = redisLock.tryLock(LOCK_BLOG_LIKED_FLUSH_KEY);
+        if (lease == null) {
+            return;
+        }
+        try {
+            // 1.上次没有写回成功的增量
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKED_FLUSHING_KEY))) {
+                // 2.取出当前的增量，RENAMENX保证不会覆盖未写回的增量
+                if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKED_DELTA_KEY))
+                        || !Boolean.TRUE.equals(stringRedisTemplate.renameIfAbsent(BLOG_LIKED_DELTA_KEY, BLOG_LIKED_FLUSHING_KEY))) {
+                    return;
+                }
+            }
+            Map<Long, Long> deltas = readDeltas();
+            // 3.按批写回，全部成功后删除
+            List<Long> ids = new ArrayList<>(deltas.keySet());
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                Map<Long, Long> batch = new LinkedHashMap<>();
+                ids.subList(from, Math.min(from + batchSize, ids.size())).forEach(id -> batch.put(id, deltas.get(id)));
+                transactionTemplate.execute(status -> blogMapper.increaseLikedBatch(batch));
+                // 已提交的一批从HASH中移除，后面的批失败时不会重复写回
+                stringRedisTemplate.opsForHash().delete(BLOG_LIKED_FLUSHING_KEY,
+                        batch.keySet().stream().map(String::valueOf).toArray());
+                batches.increment();
+                flushed.add(batch.size());
+            }
+            stringRedisTemplate.delete(BLOG_LIKED_FLUSHING_KEY);
+        } catch (Exception e) {
+            // 不能抛出异常，否则定时任务会停止；未写回的增量留在redis中，下次重试
+            failed.increment();
+            log.error("写回点赞数失败", e);
+        } finally {
+            lease.unlock();
+        }
+    }
+
+    /**
+     * 读取待写回的增量，忽略点赞后又取消、增量为0的笔记
+     */
+    private Map<Long, Long> readDeltas() {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(BLOG_LIKED_FLUSHING_KEY);
+        Map<Long, Long> deltas = new LinkedHashMap<>(entries.size());
+        entries.forEach((id, delta) -> {
+            long value = Long.parseLong(delta.toString());
+            if (value != 0) {
+                deltas.put(Long.valueOf(id.toString()), value);
+            }
+        });
+        return deltas;
+    }
+
+    public long flushedCount() {
+        return flushed.sum();
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("flushed", flushed.sum());
+        map.put("batches", batches.sum());
+        map.put("failed", failed.sum());
+        return map;
+    }
+}
@@ -0,0 +1,109 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IVoucherService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.LOCK_BLOOM_KEY;
+
+/**
+ * 布隆过滤器的加载与定时重建
+ * 启动时优先从Redis加载，Redis中没有时扫描数据库重建；定时全量重建用来清理已删除的id
+ */
+@Slf4j
+@Component
+public class BloomFilterLoader implements ApplicationRunner {
+
+    private static final int SCAN_BATCH_SIZE = 10000;
+
+    @Resource
+    private RedisBloomFilter shopBloomFilter;
+    @Resource
+    private RedisBloomFilter voucherBloomFilter;
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private IVoucherService voucherService;
+    @Resource
+    private RedisLock redisLock;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        // 异步加载，不阻塞启动；加载完成之前过滤器不做拦截
+        Thread thread = new Thread(() -> {
+            load(shopBloomFilter, shopService);
+            load(voucherBloomFilter, voucherService);
+        }, "bloom-filter-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Scheduled(initialDelayString = "${hmdp.bloom.rebuild-interval-ms:21600000}",
+            fixedDelayString = "${hmdp.bloom.rebuild-interval-ms:21600000}")
+    public void scheduledRebuild() {
+        rebuild(shopBloomFilter, shopService);
+        rebuild(voucherBloomFilter, voucherService);
+    }
+
+    private <T> void load(RedisBloomFilter filter, IService<T> service) {
+        try {
+            if (filter.loadFromRedis()) {
+                log.info("布隆过滤器[{}]从Redis加载完成", filter.getName());
+                return;
+            }
+            rebuild(filter, service);
+        } catch (Exception e) {
+            log.error("布隆过滤器[{}]加载失败", filter.getName(), e);
+        }
+    }
+
+    /**
+     * 扫描数据库重建过滤器，多个节点之间只有获取到锁的节点执行，其它节点收到通知后从Redis加载
+     *
+     * @param filter
+     * @param service
+     */
+    public <T> void rebuild(RedisBloomFilter filter, IService<T> service) {
+        // 锁由看门狗续期，扫描超过租期时不会被其它节点抢走，释放时也不会删除别人的锁
+        RedisLock.Lease lease = redisLock.tryLock(LOCK_BLOOM_KEY + filter.getName());
+        if (lease == null) {
+            return;
+        }
+        try {
+            List<Long> ids = scanIds(service, 0L);
+            filter.rebuild(ids);
+            // 扫描期间新增的id可能被重建覆盖，这里补充一次
+            long lastId = ids.isEmpty() ? 0L : ids.get(ids.size() - 1);
+            scanIds(service, lastId).forEach(filter::put);
+        } finally {
+            lease.unlock();
+        }
+    }
+
+    /**
+     * 按id顺序分批扫描大于lastId的所有id
+     */
+    private <T> List<Long> scanIds(IService<T> service, long lastId) {
+        List<Long> ids = new ArrayList<>();
+        while (true) {
+            List<Long> batch = service.listObjs(new QueryWrapper<T>()
+                            .select("id").gt("id", lastId).orderByAsc("id").last("LIMIT " + SCAN_BATCH_SIZE),
+                    id -> ((Number) id).longValue());
+            ids.addAll(batch);
+            if (batch.size() < SCAN_BATCH_SIZE) {
+                return ids;
+            }
+            lastId = batch.get(batch.size() - 1);
+        }
+    }
+}
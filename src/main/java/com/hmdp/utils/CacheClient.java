@@ -1,19 +1,27 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
-import com.hmdp.entity.Shop;
-import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
-import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
@@ -22,57 +30,373 @@ import static com.hmdp.utils.RedisConstants.*;
 @Component
 @Slf4j
 public class CacheClient {
+    /**
+     * 互斥锁策略中获取锁失败后重新查询缓存的间隔
+     */
+    private static final long MUTEX_RETRY_MILLIS = 50;
+
     private final StringRedisTemplate stringRedisTemplate;
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    /**
+     * 缓存值按字节数组读写，具体格式由CacheCodecs决定
+     */
+    private final RedisTemplate<String, byte[]> bytesRedisTemplate;
+
+    private final CacheCodecs codecs;
+
+    private final LocalCache localCache;
+
+    private final SingleFlight singleFlight;
+
+    /**
+     * key前缀对应的查询策略，未配置的前缀使用PASS_THROUGH
+     */
+    private final Map<String, CacheStrategy> strategies = new ConcurrentHashMap<>();
+
+    /**
+     * 概率提前刷新的系数，越大越倾向于提前刷新
+     */
+    private final double earlyRefreshBeta;
+
+    /**
+     * 异步重建共用的线程池，同一个key同时只有一个重建任务
+     */
+    private final CacheRebuildExecutor rebuildExecutor;
+
+    private final CacheMetrics metrics;
+
+    /**
+     * 缓存重建的互斥锁
+     */
+    private final RedisLock redisLock;
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate, RedisTemplate<String, byte[]> bytesRedisTemplate,
+                       CacheCodecs codecs, LocalCache localCache, SingleFlight singleFlight,
+                       CacheRebuildExecutor rebuildExecutor, CacheMetrics metrics, RedisLock redisLock,
+                       @Value("${hmdp.cache.strategies:}") String strategies,
+                       @Value("${hmdp.cache.early-refresh.beta:1.0}") double earlyRefreshBeta) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.bytesRedisTemplate = bytesRedisTemplate;
+        this.codecs = codecs;
+        this.localCache = localCache;
+        this.singleFlight = singleFlight;
+        this.rebuildExecutor = rebuildExecutor;
+        this.metrics = metrics;
+        this.redisLock = redisLock;
+        this.earlyRefreshBeta = earlyRefreshBeta;
+        // 格式：前缀=策略，多个用逗号隔开，例如 cache:shop:=logical-expire
+        for (String item : StrUtil.splitTrim(strategies, ',')) {
+            int index = item.lastIndexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException("缓存策略配置格式错误，应为 前缀=策略：" + item);
+            }
+            CacheStrategy strategy;
+            try {
+                strategy = CacheStrategy.of(item.substring(index + 1));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("未知的缓存策略：" + item, e);
+            }
+            setStrategy(item.substring(0, index), strategy);
+        }
+    }
+
+    public void setStrategy(String keyPrefix, CacheStrategy strategy) {
+        strategies.put(keyPrefix, strategy);
+    }
+
+    public CacheStrategy getStrategy(String keyPrefix) {
+        return strategies.getOrDefault(keyPrefix, CacheStrategy.PASS_THROUGH);
+    }
+
+    /**
+     * 按key前缀配置的策略查询缓存
+     *
+     * @param keyPrefix  key前缀
+     * @param id         id
+     * @param type       值类型
+     * @param dbFallback 查询数据库
+     * @return
+     */
+    public <R, ID> R query(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                           Long time, TimeUnit unit) {
+        CacheStrategy strategy = getStrategy(keyPrefix);
+        return metrics.timeOperation("query", keyPrefix, strategy, () -> {
+            switch (strategy) {
+                case MUTEX:
+                    return queryWithMutex(keyPrefix, id, type, dbFallback, time, unit);
+                case LOGICAL_EXPIRE:
+                    return queryWithLogicExpire(keyPrefix, id, type, dbFallback, time, unit);
+                case EARLY_REFRESH:
+                    return queryWithEarlyRefresh(keyPrefix, id, type, dbFallback, time, unit);
+                default:
+                    return queryWithPassThrough(keyPrefix, id, type, dbFallback, time, unit);
+            }
+        });
+    }
+
+    /**
+     * key前缀对应的布隆过滤器
+     */
+    private final Map<String, RedisBloomFilter> bloomFilters = new ConcurrentHashMap<>();
+
+    public void registerBloomFilter(String keyPrefix, RedisBloomFilter bloomFilter) {
+        bloomFilters.put(keyPrefix, bloomFilter);
+    }
+
+    /**
+     * 通过布隆过滤器判断id是否可能存在，没有配置过滤器的前缀一律认为存在
+     *
+     * @param keyPrefix
+     * @param id
+     * @return
+     */
+    private boolean mightExist(String keyPrefix, Object id) {
+        RedisBloomFilter bloomFilter = bloomFilters.get(keyPrefix);
+        return bloomFilter == null || bloomFilter.mightContain(id);
+    }
+
+    /**
+     * 指标中使用的key前缀：最后一个冒号及之前的部分
+     */
+    private static String prefixOf(String key) {
+        return key.substring(0, key.lastIndexOf(':') + 1);
     }
 
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        // 需要将参数中的value序列化为字符串对象
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        // 需要将参数中的value按key前缀对应的编码器序列化
+        metrics.timeOperation("set", prefixOf(key), CacheStrategy.PASS_THROUGH, () -> {
+            bytesRedisTemplate.opsForValue().set(key, codecs.encode(key, value), time, unit);
+            return null;
+        });
     }
 
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
         // 设置逻辑过期
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
-        //
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value));
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(time));
+        // 写入redis，并通知各节点丢弃本地缓存中的旧数据
+        metrics.timeOperation("set", prefixOf(key), CacheStrategy.LOGICAL_EXPIRE, () -> {
+            bytesRedisTemplate.opsForValue().set(key, codecs.encode(key, value, expireTime));
+            return null;
+        });
+        invalidateLocal(key);
+    }
+
+    /**
+     * 通过管道批量写入缓存，按key前缀配置的策略决定是否带逻辑过期时间，用于批量回填和缓存预热；同时通知所有节点清理本地缓存
+     *
+     * @param keyPrefix key前缀
+     * @param values    id到值的映射
+     * @param time      过期时间
+     * @param unit      时间单位
+     */
+    public <ID> void setBatch(String keyPrefix, Map<ID, ?> values, Long time, TimeUnit unit) {
+        if (values.isEmpty()) {
+            return;
+        }
+        CacheStrategy strategy = getStrategy(keyPrefix);
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(time));
+        metrics.timeOperation("set_batch", keyPrefix, strategy, () -> bytesRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((id, value) -> {
+                String key = keyPrefix + id;
+                switch (strategy) {
+                    case LOGICAL_EXPIRE:
+                        connection.set(rawKey(key), codecs.encode(key, value, expireTime));
+                        break;
+                    case EARLY_REFRESH:
+                        // 提前刷新的数据在逻辑过期时间到达时由redis真正删除
+                        connection.pSetEx(rawKey(key), unit.toMillis(time), codecs.encode(key, value, expireTime));
+                        break;
+                    default:
+                        connection.pSetEx(rawKey(key), unit.toMillis(time), codecs.encode(key, value));
+                }
+                // 与单个key的写入一样，通知其它节点丢弃本地缓存和热点副本中的旧数据
+                if (localCache.mayHold(key)) {
+                    connection.publish(rawKey(CACHE_INVALIDATE_CHANNEL), rawKey(LocalCache.invalidateMessage(key)));
+                }
+            });
+            return null;
+        }));
+        values.keySet().forEach(id -> localCache.invalidate(keyPrefix + id));
+    }
+
+    /**
+     * 删除缓存，同时通知所有节点清理本地缓存
+     *
+     * @param key
+     */
+    public void delete(String key) {
+        metrics.timeOperation("delete", prefixOf(key), null, () -> stringRedisTemplate.delete(key));
+        invalidateLocal(key);
+    }
+
+    /**
+     * 通过管道批量删除缓存，同时通知所有节点清理本地缓存
+     *
+     * @param keys
+     */
+    public void deleteBatch(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.del(rawKey(key));
+                if (localCache.mayHold(key)) {
+                    connection.publish(rawKey(CACHE_INVALIDATE_CHANNEL), rawKey(LocalCache.invalidateMessage(key)));
+                }
+            }
+            return null;
+        });
+        keys.forEach(localCache::invalidate);
+    }
+
+    private void invalidateLocal(String key) {
+        localCache.invalidate(key);
+        if (localCache.mayHold(key)) {
+            stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, LocalCache.invalidateMessage(key));
+        }
     }
 
     public <R, ID> R queryWithPassThrough(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
                                           Long time, TimeUnit unit) {
+        // 0.布隆过滤器判断id一定不存在，直接返回
+        if (!mightExist(keyPrefix, id)) {
+            metrics.recordGet(keyPrefix, CacheStrategy.PASS_THROUGH, CacheMetrics.REJECTED);
+            return null;
+        }
         String key = keyPrefix + id;
+        // 0.先查本地缓存
+        R local = localCache.get(key, type);
+        if (local != null) {
+            metrics.recordGet(keyPrefix, CacheStrategy.PASS_THROUGH, CacheMetrics.LOCAL_HIT);
+            return local;
+        }
         // 1.从redis中查询商品缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = bytesRedisTemplate.opsForValue().get(key);
         // 2.判断是否存在缓存
-        if (StrUtil.isNotBlank(json)) {  // 这里为空有两种情况：null或者""
-            // 3.存在，直接返回，将json数据转换为shop对象
-            return JSONUtil.toBean(json, type);
-        }
-        // 判断是否是""的情况， 下面只有两种该情况null或者""，null需要查询数据库，但""不查
-        // 如果出现空值，则直接返回店铺不存在
-        if (json != null) {
-            // 返回错误信息
+        if (bytes != null && bytes.length > 0) {  // 这里为空有两种情况：null或者""
+            // 3.存在，直接返回，反序列化为对象；无法识别的格式（例如滚动发布期间其它版本写入的数据）按未命中处理
+            RedisData redisData = codecs.decode(bytes, type, false);
+            if (redisData != null) {
+                metrics.recordGet(keyPrefix, CacheStrategy.PASS_THROUGH, CacheMetrics.HIT);
+                R r = type.cast(redisData.getData());
+                localCache.put(key, r);
+                return r;
+            }
+        } else if (bytes != null) {
+            // 判断是否是""的情况， 下面只有两种该情况null或者""，null需要查询数据库，但""不查
+            // 如果出现空值，则直接返回店铺不存在
+            metrics.recordGet(keyPrefix, CacheStrategy.PASS_THROUGH, CacheMetrics.NULL_HIT);
             return null;
         }
-        // 4.不存在根据id查询数据库
-        R r = dbFallback.apply(id);
-        // 5.不存在，返回错误
-        if (r == null) {
-            // 如果查询的结果为""，则将空值存到缓存中
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+        // 4.不存在根据id查询数据库，本节点内同一个key只有一个线程查询，其它线程等待结果
+        metrics.recordGet(keyPrefix, CacheStrategy.PASS_THROUGH, CacheMetrics.MISS);
+        return singleFlight.execute(key, () -> {
+            R r = metrics.timeLoad(keyPrefix, () -> dbFallback.apply(id));
+            // 5.不存在，返回错误
+            if (r == null) {
+                // 如果查询的结果为""，则将空值存到缓存中
+                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                return null;
+            }
+            // 6.存在，写入redis
+            this.set(key, r, time, unit);
+            localCache.put(key, r);
+            // 7.返回店铺信息
+            return r;
+        });
+    }
+
+    /**
+     * 使用互斥锁解决缓存击穿问题，缓存格式与PASS_THROUGH相同
+     *
+     * @param keyPrefix  key前缀
+     * @param id         id
+     * @param type       值类型
+     * @param dbFallback 查询数据库
+     * @return
+     */
+    public <R, ID> R queryWithMutex(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                                    Long time, TimeUnit unit) {
+        // 0.布隆过滤器判断id一定不存在，直接返回
+        if (!mightExist(keyPrefix, id)) {
+            metrics.recordGet(keyPrefix, CacheStrategy.MUTEX, CacheMetrics.REJECTED);
             return null;
         }
-        // 6.存在，写入redis
-        this.set(key, r, time, unit);
-        // 7.返回店铺信息
-        return r;
+        String key = keyPrefix + id;
+        // 0.先查本地缓存
+        R local = localCache.get(key, type);
+        if (local != null) {
+            metrics.recordGet(keyPrefix, CacheStrategy.MUTEX, CacheMetrics.LOCAL_HIT);
+            return local;
+        }
+        // 1.从redis中查询缓存
+        byte[] bytes = bytesRedisTemplate.opsForValue().get(key);
+        if (bytes != null && bytes.length == 0) {
+            // 2.空值，直接返回
+            metrics.recordGet(keyPrefix, CacheStrategy.MUTEX, CacheMetrics.NULL_HIT);
+            return null;
+        }
+        RedisData redisData = bytes == null ? null : codecs.decode(bytes, type, false);
+        if (redisData != null) {
+            // 3.命中，直接返回
+            metrics.recordGet(keyPrefix, CacheStrategy.MUTEX, CacheMetrics.HIT);
+            R r = type.cast(redisData.getData());
+            localCache.put(key, r);
+            return r;
+        }
+        // 4.未命中，本节点内同一个key的请求合并，只有一个线程去竞争互斥锁
+        metrics.recordGet(keyPrefix, CacheStrategy.MUTEX, CacheMetrics.MISS);
+        return singleFlight.execute(key, () -> rebuildWithMutex(key, id, type, dbFallback, time, unit));
     }
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /**
+     * 获取互斥锁后重建缓存，获取失败则休眠后重新查询缓存，其它节点可能已经完成了重建
+     */
+    private <R, ID> R rebuildWithMutex(String key, ID id, Class<R> type, Function<ID, R> dbFallback,
+                                       Long time, TimeUnit unit) {
+        String keyPrefix = prefixOf(key);
+        RedisLock.Lease lease;
+        while (true) {
+            // 4.1 获取互斥锁
+            lease = redisLock.tryLock(LOCK_CACHE_REBUILD_KEY + key);
+            metrics.recordLock(keyPrefix, lease != null);
+            if (lease != null) {
+                break;
+            }
+            // 4.2 失败，则休眠并重新查询缓存
+            try {
+                Thread.sleep(MUTEX_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            byte[] bytes = bytesRedisTemplate.opsForValue().get(key);
+            if (bytes != null && bytes.length == 0) {
+                return null;
+            }
+            RedisData redisData = bytes == null ? null : codecs.decode(bytes, type, false);
+            if (redisData != null) {
+                return type.cast(redisData.getData());
+            }
+        }
+        try {
+            // 4.3 成功，根据id查询数据库
+            R r = metrics.timeLoad(keyPrefix, () -> dbFallback.apply(id));
+            // 5.不存在，将空值存到缓存中
+            if (r == null) {
+                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                return null;
+            }
+            // 6.存在，写入redis
+            this.set(key, r, time, unit);
+            localCache.put(key, r);
+            return r;
+        } finally {
+            // 7.释放互斥锁
+            lease.unlock();
+        }
+    }
 
     /**
      * 设置逻辑过期时间解决缓存击穿问题
@@ -82,17 +406,49 @@ public class CacheClient {
      */
     public <R,ID> R queryWithLogicExpire(String keyPrefix, ID id,Class<R> type, Function<ID,R> dbFallback,
                                          Long time, TimeUnit unit) {
-        String key = keyPrefix + id;
-        // 1.从redis中查询商品缓存
-        String json = stringRedisTemplate.opsForValue().get(CACHE_SHOP_KEY + id);
-        // 2.判断是否存在缓存
-        if (StrUtil.isBlank(json)) {  // 这里为空有两种情况：null或者""
-            // 3.存在，直接返回，将json数据转换为shop对象
+        // 0.布隆过滤器判断id一定不存在，直接返回
+        if (!mightExist(keyPrefix, id)) {
+            metrics.recordGet(keyPrefix, CacheStrategy.LOGICAL_EXPIRE, CacheMetrics.REJECTED);
             return null;
         }
-        // 4.命中，需要先把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        String key = keyPrefix + id;
+        // 0.先查本地缓存，本地缓存中保存的是已经反序列化的RedisData
+        RedisData redisData = localCache.get(key, RedisData.class);
+        boolean local = redisData != null && type.isInstance(redisData.getData());
+        if (!local) {
+            // 1.从redis中查询商品缓存
+            byte[] bytes = bytesRedisTemplate.opsForValue().get(key);
+            // 2.判断是否存在缓存
+            if (bytes != null && bytes.length == 0) {
+                // 3.空值，直接返回
+                metrics.recordGet(keyPrefix, CacheStrategy.LOGICAL_EXPIRE, CacheMetrics.NULL_HIT);
+                return null;
+            }
+            if (bytes == null) {
+                // 3.不存在（更新后被删除或尚未预热），同步加载，本节点内同一个key只有一个线程查询数据库
+                metrics.recordGet(keyPrefix, CacheStrategy.LOGICAL_EXPIRE, CacheMetrics.MISS);
+                return singleFlight.execute(key, () -> {
+                    R r = metrics.timeLoad(keyPrefix, () -> dbFallback.apply(id));
+                    if (r == null) {
+                        stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                        return null;
+                    }
+                    this.setWithLogicalExpire(key, r, time, unit);
+                    return r;
+                });
+            }
+            // 4.命中，需要先反序列化为对象
+            redisData = codecs.decode(bytes, type, true);
+            if (redisData == null) {
+                // 无法识别的格式，按本节点的格式重建
+                metrics.recordGet(keyPrefix, CacheStrategy.LOGICAL_EXPIRE, CacheMetrics.MISS);
+                rebuildAsync(key, id, dbFallback, time, unit);
+                return null;
+            }
+            localCache.put(key, redisData);
+        }
+        metrics.recordGet(keyPrefix, CacheStrategy.LOGICAL_EXPIRE, local ? CacheMetrics.LOCAL_HIT : CacheMetrics.HIT);
+        R r = type.cast(redisData.getData());
         LocalDateTime expireTime = redisData.getExpireTime();
         // 5.判断是否过期
         if (expireTime.isAfter(LocalDateTime.now())) {
@@ -100,50 +456,406 @@ public class CacheClient {
             return r;
         }
         // 5.2 过期了，尝试获取互斥锁来重建缓存数据
+        metrics.recordGet(keyPrefix, CacheStrategy.LOGICAL_EXPIRE, CacheMetrics.STALE);
+        rebuildAsync(key, id, dbFallback, time, unit);
+        // 6.4 失败,直接返回过期商铺信息
+
+
+        // 7.返回店铺信息
+        return r;
+    }
+
+    /**
+     * 缓存重建：获取互斥锁成功后开启独立线程查询数据库并写入逻辑过期数据
+     */
+    private <R, ID> void rebuildAsync(String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         // 6.缓存重建
         // 6.1 获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lockKey);
+        RedisLock.Lease lease = redisLock.tryLock(LOCK_CACHE_REBUILD_KEY + key);
+        String keyPrefix = prefixOf(key);
+        metrics.recordLock(keyPrefix, lease != null);
         // 6.2 判断是否获取锁成功
-        if (isLock) {
-            // TODO 6.3 成功,开启独立线程,实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
+        if (lease != null) {
+            // 锁交给重建线程释放，当前线程不能再重入
+            lease.detach();
+            // 6.3 成功,提交到重建线程池,实现缓存重建
+            boolean accepted = rebuildExecutor.submit(key, () -> {
                 try {
                     // 查询数据库
-                    R r1 = dbFallback.apply(id);
-                    this.setWithLogicalExpire(key,r1,time,unit);
-
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+                    R r1 = metrics.timeLoad(keyPrefix, () -> dbFallback.apply(id));
+                    if (r1 == null) {
+                        // 数据已被删除，与同步加载一样写入空值，不能写入data为null的逻辑过期数据，否则每次读取都会触发重建
+                        stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                        invalidateLocal(key);
+                        return;
+                    }
+                    this.setWithLogicalExpire(key, r1, time, unit);
                 } finally {
-                    unlock(lockKey);
+                    lease.unlock();
                 }
-            });
+            }, lease::unlock);
+            if (!accepted) {
+                // 本节点已有重建任务或队列已满，释放锁让其它节点有机会重建
+                lease.unlock();
+            }
         }
-        // 6.4 失败,直接返回过期商铺信息
+    }
+
+    /**
+     * 概率提前刷新（XFetch）：每次命中时以一定概率提前重建缓存，越接近过期、上次重建越耗时，概率越大
+     * 热点key在过期之前就会被刷新，不需要互斥锁；redis中的真实过期时间与逻辑过期时间一致
+     *
+     * @param keyPrefix  key前缀
+     * @param id         id
+     * @param type       值类型
+     * @param dbFallback 查询数据库
+     * @return
+     */
+    public <R, ID> R queryWithEarlyRefresh(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                                           Long time, TimeUnit unit) {
+        // 0.布隆过滤器判断id一定不存在，直接返回
+        if (!mightExist(keyPrefix, id)) {
+            metrics.recordGet(keyPrefix, CacheStrategy.EARLY_REFRESH, CacheMetrics.REJECTED);
+            return null;
+        }
+        String key = keyPrefix + id;
+        // 1.先查本地缓存，再查redis
+        RedisData redisData = localCache.get(key, RedisData.class);
+        if (redisData == null || !type.isInstance(redisData.getData())) {
+            byte[] bytes = bytesRedisTemplate.opsForValue().get(key);
+            if (bytes != null && bytes.length == 0) {
+                // 空值
+                metrics.recordGet(keyPrefix, CacheStrategy.EARLY_REFRESH, CacheMetrics.NULL_HIT);
+                return null;
+            }
+            redisData = bytes == null ? null : codecs.decode(bytes, type, true);
+            if (redisData == null) {
+                // 2.未命中，同步加载，本节点内同一个key只有一个线程查询数据库
+                metrics.recordGet(keyPrefix, CacheStrategy.EARLY_REFRESH, CacheMetrics.MISS);
+                return singleFlight.execute(key, () -> loadWithRebuildCost(key, id, dbFallback, time, unit));
+            }
+            metrics.recordGet(keyPrefix, CacheStrategy.EARLY_REFRESH, CacheMetrics.HIT);
+            localCache.put(key, redisData);
+        } else {
+            metrics.recordGet(keyPrefix, CacheStrategy.EARLY_REFRESH, CacheMetrics.LOCAL_HIT);
+        }
+        // 3.命中，按概率决定是否提前刷新
+        if (shouldRefreshEarly(redisData)) {
+            refreshAsync(key, id, dbFallback, time, unit);
+        }
+        return type.cast(redisData.getData());
+    }
 
+    /**
+     * XFetch：now - rebuildCost * beta * ln(rand) >= expireTime 时提前刷新
+     */
+    private boolean shouldRefreshEarly(RedisData redisData) {
+        return shouldRefreshEarly(redisData.getExpireTime(), redisData.getRebuildCost());
+    }
 
-        // 7.返回店铺信息
+    private boolean shouldRefreshEarly(LocalDateTime expireTime, Long rebuildCost) {
+        long expireMillis = expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long cost = rebuildCost == null ? 0 : rebuildCost;
+        // 1 - nextDouble() 的取值范围是(0, 1]，避免ln(0)
+        double gap = -cost * earlyRefreshBeta * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+        return System.currentTimeMillis() + gap >= expireMillis;
+    }
+
+    private <R, ID> void refreshAsync(String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        rebuildExecutor.submit(key, () -> loadWithRebuildCost(key, id, dbFallback, time, unit));
+    }
+
+    /**
+     * 查询数据库并记录耗时，写入带逻辑过期时间和重建耗时的缓存
+     */
+    private <R, ID> R loadWithRebuildCost(String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        long begin = System.nanoTime();
+        R r = metrics.timeLoad(prefixOf(key), () -> dbFallback.apply(id));
+        if (r == null) {
+            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            return null;
+        }
+        long rebuildCost = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(time));
+        bytesRedisTemplate.opsForValue().set(key, codecs.encode(key, r, expireTime, rebuildCost), time, unit);
+        invalidateLocal(key);
         return r;
     }
+
     /**
-     * 尝试获取锁
+     * 查询缓存中未解码的数据，命中时由调用方把数据原样写入响应，省去反序列化和再次序列化
+     * 只有key前缀配置了wire编码器时才可能命中；逻辑过期只读取头部判断，过期时照常触发异步重建并返回旧数据
      *
-     * @param key
-     * @return
+     * @param keyPrefix  key前缀
+     * @param id         id
+     * @param dbFallback 查询数据库，用于异步重建
+     * @return 未命中、空值或其它格式的缓存值返回null，调用方需要回退到query
      */
-    private boolean tryLock(String key) {
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-        // return flag;  不能直接返回flag，否则可能会出现空指针异常的情况
-        return BooleanUtil.isTrue(flag);
+    public <R, ID> RawCacheValue queryRaw(String keyPrefix, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        CacheStrategy strategy = getStrategy(keyPrefix);
+        return metrics.timeOperation("query_raw", keyPrefix, strategy, () -> {
+            if (!(codecs.codecFor(keyPrefix) instanceof WireCacheCodec) || !mightExist(keyPrefix, id)) {
+                return null;
+            }
+            String key = keyPrefix + id;
+            // 1.先查本地缓存，本地缓存中保存的是原始数据的视图
+            RawCacheValue raw = localCache.get(key, RawCacheValue.class);
+            boolean local = raw != null;
+            if (!local) {
+                byte[] bytes = bytesRedisTemplate.opsForValue().get(key);
+                raw = bytes == null || bytes.length == 0 ? null : codecs.readRaw(bytes, WireCacheCodec.ID);
+                if (raw == null) {
+                    // 未命中、空值和旧格式都交给query处理
+                    return null;
+                }
+                localCache.put(key, raw);
+            }
+            metrics.recordGet(keyPrefix, strategy, local ? CacheMetrics.LOCAL_HIT : CacheMetrics.HIT);
+            // 2.只根据头部中的逻辑过期时间判断是否需要重建
+            LocalDateTime expireTime = raw.getExpireTime();
+            if (expireTime == null) {
+                return raw;
+            }
+            if (strategy == CacheStrategy.EARLY_REFRESH) {
+                if (shouldRefreshEarly(expireTime, raw.getRebuildCost())) {
+                    refreshAsync(key, id, dbFallback, time, unit);
+                }
+            } else if (!expireTime.isAfter(LocalDateTime.now())) {
+                metrics.recordGet(keyPrefix, strategy, CacheMetrics.STALE);
+                rebuildAsync(key, id, dbFallback, time, unit);
+            }
+            return raw;
+        });
     }
 
     /**
-     * 释放锁
+     * 批量查询，按key前缀配置的策略选择缓存格式
      *
-     * @param key
+     * @param keyPrefix  key前缀
+     * @param ids        id集合
+     * @param type       值类型
+     * @param dbFallback 根据id集合批量查询数据库，返回id到值的映射
+     * @return 按ids顺序排列的查询结果，不存在的id不会出现在结果中
      */
-    private void unlock(String key) {
-        stringRedisTemplate.delete(key);
+    public <R, ID> Map<ID, R> queryBatch(String keyPrefix, Collection<ID> ids, Class<R> type,
+                                         Function<Collection<ID>, Map<ID, R>> dbFallback, Long time, TimeUnit unit) {
+        CacheStrategy strategy = getStrategy(keyPrefix);
+        return metrics.timeOperation("query_batch", keyPrefix, strategy, () -> {
+            // 互斥锁策略的缓存格式与PASS_THROUGH相同
+            if (strategy == CacheStrategy.PASS_THROUGH || strategy == CacheStrategy.MUTEX) {
+                return queryBatchWithPassThrough(keyPrefix, ids, type, dbFallback, time, unit);
+            }
+            return queryBatchWithExpireTime(keyPrefix, ids, type, dbFallback, time, unit, strategy);
+        });
+    }
+
+    /**
+     * 批量查询：一次MGET查询缓存，未命中的id通过一次IN查询加载，再通过管道一次性写回
+     *
+     * @param keyPrefix  key前缀
+     * @param ids        id集合
+     * @param type       值类型
+     * @param dbFallback 根据id集合批量查询数据库，返回id到值的映射
+     * @return 按ids顺序排列的查询结果，不存在的id不会出现在结果中
+     */
+    public <R, ID> Map<ID, R> queryBatchWithPassThrough(String keyPrefix, Collection<ID> ids, Class<R> type,
+                                                        Function<Collection<ID>, Map<ID, R>> dbFallback,
+                                                        Long time, TimeUnit unit) {
+        Map<ID, R> found = new HashMap<>();
+        List<ID> misses = new ArrayList<>();
+        // 1.查询本地缓存和redis
+        List<byte[]> values = multiGet(keyPrefix, ids, type, found);
+        metrics.recordGets(keyPrefix, CacheStrategy.PASS_THROUGH, CacheMetrics.LOCAL_HIT, found.size());
+        List<ID> remoteIds = remoteIds(keyPrefix, ids, found);
+        int nullHits = 0;
+        for (int i = 0; i < remoteIds.size(); i++) {
+            ID id = remoteIds.get(i);
+            byte[] bytes = values.get(i);
+            // 为""的是空值缓存，直接跳过
+            if (bytes != null && bytes.length == 0) {
+                nullHits++;
+                continue;
+            }
+            // 2.命中，反序列化
+            RedisData redisData = bytes == null ? null : codecs.decode(bytes, type, false);
+            if (redisData == null) {
+                // 3.未命中或格式无法识别，需要查询数据库
+                misses.add(id);
+                continue;
+            }
+            R r = type.cast(redisData.getData());
+            localCache.put(keyPrefix + id, r);
+            found.put(id, r);
+        }
+        metrics.recordGets(keyPrefix, CacheStrategy.PASS_THROUGH, CacheMetrics.NULL_HIT, nullHits);
+        metrics.recordGets(keyPrefix, CacheStrategy.PASS_THROUGH, CacheMetrics.HIT,
+                remoteIds.size() - nullHits - misses.size());
+        metrics.recordGets(keyPrefix, CacheStrategy.PASS_THROUGH, CacheMetrics.MISS, misses.size());
+        if (!misses.isEmpty()) {
+            // 4.一次查询数据库，并通过管道写回redis
+            Map<ID, R> loaded = metrics.timeLoad(keyPrefix, () -> dbFallback.apply(misses));
+            bytesRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (ID id : misses) {
+                    String key = keyPrefix + id;
+                    R r = loaded.get(id);
+                    if (r == null) {
+                        connection.setEx(rawKey(key), TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL), new byte[0]);
+                    } else {
+                        connection.setEx(rawKey(key), unit.toSeconds(time), codecs.encode(key, r));
+                    }
+                }
+                return null;
+            });
+            loaded.forEach((id, r) -> {
+                if (r != null) {
+                    localCache.put(keyPrefix + id, r);
+                    found.put(id, r);
+                }
+            });
+        }
+        return ordered(ids, found);
+    }
+
+    /**
+     * 批量查询逻辑过期的缓存：过期的数据直接返回并异步重建，缓存中不存在的id一次查询数据库后写入逻辑过期数据
+     *
+     * @param keyPrefix  key前缀
+     * @param ids        id集合
+     * @param type       值类型
+     * @param dbFallback 根据id集合批量查询数据库，返回id到值的映射
+     * @return 按ids顺序排列的查询结果，不存在的id不会出现在结果中
+     */
+    public <R, ID> Map<ID, R> queryBatchWithLogicExpire(String keyPrefix, Collection<ID> ids, Class<R> type,
+                                                        Function<Collection<ID>, Map<ID, R>> dbFallback,
+                                                        Long time, TimeUnit unit) {
+        return queryBatchWithExpireTime(keyPrefix, ids, type, dbFallback, time, unit, CacheStrategy.LOGICAL_EXPIRE);
+    }
+
+    /**
+     * 批量查询带逻辑过期时间的缓存，LOGICAL_EXPIRE与EARLY_REFRESH两种策略共用
+     */
+    private <R, ID> Map<ID, R> queryBatchWithExpireTime(String keyPrefix, Collection<ID> ids, Class<R> type,
+                                                        Function<Collection<ID>, Map<ID, R>> dbFallback,
+                                                        Long time, TimeUnit unit, CacheStrategy strategy) {
+        Map<ID, RedisData> found = new HashMap<>();
+        List<ID> misses = new ArrayList<>();
+        // 1.查询本地缓存和redis
+        List<byte[]> values = multiGet(keyPrefix, ids, RedisData.class, found);
+        metrics.recordGets(keyPrefix, strategy, CacheMetrics.LOCAL_HIT, found.size());
+        List<ID> remoteIds = remoteIds(keyPrefix, ids, found);
+        int nullHits = 0;
+        for (int i = 0; i < remoteIds.size(); i++) {
+            ID id = remoteIds.get(i);
+            byte[] bytes = values.get(i);
+            if (bytes != null && bytes.length == 0) {
+                nullHits++;
+                continue;
+            }
+            RedisData redisData = bytes == null ? null : codecs.decode(bytes, type, true);
+            if (redisData == null) {
+                misses.add(id);
+                continue;
+            }
+            localCache.put(keyPrefix + id, redisData);
+            found.put(id, redisData);
+        }
+        metrics.recordGets(keyPrefix, strategy, CacheMetrics.NULL_HIT, nullHits);
+        metrics.recordGets(keyPrefix, strategy, CacheMetrics.MISS, misses.size());
+        Map<ID, R> result = new HashMap<>();
+        LocalDateTime now = LocalDateTime.now();
+        metrics.recordGets(keyPrefix, strategy, CacheMetrics.HIT, remoteIds.size() - nullHits - misses.size());
+        found.forEach((id, redisData) -> {
+            if (!type.isInstance(redisData.getData())) {
+                return;
+            }
+            // 2.过期的数据异步重建，先返回旧数据
+            Function<ID, R> singleFallback = id1 -> dbFallback.apply(Collections.singletonList(id1)).get(id1);
+            if (strategy == CacheStrategy.EARLY_REFRESH) {
+                if (shouldRefreshEarly(redisData)) {
+                    refreshAsync(keyPrefix + id, id, singleFallback, time, unit);
+                }
+            } else if (!redisData.getExpireTime().isAfter(now)) {
+                metrics.recordGet(keyPrefix, strategy, CacheMetrics.STALE);
+                rebuildAsync(keyPrefix + id, id, singleFallback, time, unit);
+            }
+            result.put(id, type.cast(redisData.getData()));
+        });
+        if (!misses.isEmpty()) {
+            // 3.一次查询数据库，并通过管道写回逻辑过期数据
+            Map<ID, R> loaded = metrics.timeLoad(keyPrefix, () -> dbFallback.apply(misses));
+            setBatch(keyPrefix, loaded, time, unit);
+            // 4.数据库中也不存在的id写入空值，防止缓存穿透
+            List<ID> absent = new ArrayList<>(misses);
+            absent.removeAll(loaded.keySet());
+            setNullBatch(keyPrefix, absent);
+            result.putAll(loaded);
+        }
+        return ordered(ids, result);
+    }
+
+    /**
+     * 通过管道批量写入空值缓存
+     */
+    private <ID> void setNullBatch(String keyPrefix, Collection<ID> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        bytesRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : ids) {
+                connection.setEx(rawKey(keyPrefix + id), TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL), new byte[0]);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 先查本地缓存，命中的放入found，剩余的id通过一次MGET查询redis
+     */
+    private <V, ID> List<byte[]> multiGet(String keyPrefix, Collection<ID> ids, Class<V> type, Map<ID, V> found) {
+        List<String> keys = new ArrayList<>();
+        for (ID id : ids) {
+            if (found.containsKey(id) || !mightExist(keyPrefix, id)) {
+                continue;
+            }
+            V local = localCache.get(keyPrefix + id, type);
+            if (local != null) {
+                found.put(id, local);
+            }
+        }
+        for (ID id : remoteIds(keyPrefix, ids, found)) {
+            keys.add(keyPrefix + id);
+        }
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return bytesRedisTemplate.opsForValue().multiGet(keys);
+    }
+
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 本地缓存未命中、需要查询redis的id，去重并保持顺序
+     */
+    private <ID> List<ID> remoteIds(String keyPrefix, Collection<ID> ids, Map<ID, ?> found) {
+        List<ID> remoteIds = new ArrayList<>();
+        for (ID id : new LinkedHashSet<>(ids)) {
+            if (!found.containsKey(id) && mightExist(keyPrefix, id)) {
+                remoteIds.add(id);
+            }
+        }
+        return remoteIds;
+    }
+
+    private <R, ID> Map<ID, R> ordered(Collection<ID> ids, Map<ID, R> found) {
+        Map<ID, R> result = new LinkedHashMap<>();
+        for (ID id : ids) {
+            R r = found.get(id);
+            if (r != null) {
+                result.put(id, r);
+            }
+        }
+        return result;
     }
 }
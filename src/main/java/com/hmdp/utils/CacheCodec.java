@@ -0,0 +1,32 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存值的编解码器
+ * 除JSON之外的编码器写入的缓存值都带有头部（编码器id和格式版本），各节点可以逐台滚动发布
+ */
+public interface CacheCodec {
+
+    /**
+     * 编码器名称，用于按key前缀配置编码器
+     */
+    String name();
+
+    /**
+     * 编码器id，写入缓存值的头部
+     */
+    byte id();
+
+    /**
+     * 编码格式的版本，格式不兼容时需要递增
+     */
+    byte version();
+
+    byte[] encode(Object value);
+
+    /**
+     * 解码
+     *
+     * @return 数据与当前的类定义不兼容时返回null，按缓存未命中处理
+     */
+    <T> T decode(byte[] bytes, int offset, int length, Class<T> type);
+}
@@ -0,0 +1,280 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按key前缀选择缓存值的编码器，并负责缓存值的头部
+ * <p>
+ * JSON编码器写入不带头部的JSON文本（逻辑过期时为RedisData的JSON），与旧格式兼容；
+ * 其它编码器写入的格式为：MAGIC | 编码器id | 格式版本 | 标志位 | [逻辑过期时间] | [重建耗时] | 数据
+ * 读取时根据首字节判断格式，因此切换编码器之后旧数据依然可以读取
+ */
+@Slf4j
+@Component
+public class CacheCodecs {
+
+    /**
+     * 带头部的缓存值的首字节，JSON文本不会以该字节开头
+     */
+    public static final byte MAGIC = (byte) 0xFE;
+    public static final int FLAG_LOGICAL_EXPIRE = 1;
+    public static final int FLAG_REBUILD_COST = 2;
+    public static final int HEADER_LENGTH = 4;
+
+    private final Map<Byte, CacheCodec> codecsById = new HashMap<>();
+    private final Map<String, CacheCodec> prefixCodecs = new LinkedHashMap<>();
+    private final JsonCacheCodec jsonCodec;
+    private final Set<Class<?>> unsupportedTypes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param codecs 所有的编码器
+     * @param config 前缀与编码器的对应关系，例如：cache:shop:=binary,cache:voucher:=binary
+     */
+    public CacheCodecs(List<CacheCodec> codecs, @Value("${hmdp.cache.codecs:}") String config) {
+        JsonCacheCodec json = null;
+        Map<String, CacheCodec> byName = new HashMap<>();
+        for (CacheCodec codec : codecs) {
+            codecsById.put(codec.id(), codec);
+            byName.put(codec.name(), codec);
+            if (codec instanceof JsonCacheCodec) {
+                json = (JsonCacheCodec) codec;
+            }
+        }
+        this.jsonCodec = json == null ? new JsonCacheCodec() : json;
+        for (String item : StrUtil.splitTrim(config, ',')) {
+            int index = item.lastIndexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException("缓存编码器配置格式错误，应为 前缀=编码器：" + item);
+            }
+            CacheCodec codec = byName.get(item.substring(index + 1));
+            if (codec == null) {
+                throw new IllegalArgumentException("未知的缓存编码器：" + item);
+            }
+            prefixCodecs.put(item.substring(0, index), codec);
+        }
+    }
+
+    public CacheCodec codecFor(String key) {
+        for (Map.Entry<String, CacheCodec> entry : prefixCodecs.entrySet()) {
+            if (key.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return jsonCodec;
+    }
+
+    public byte[] encode(String key, Object value) {
+        return encode(key, value, null);
+    }
+
+    /**
+     * 编码缓存值
+     *
+     * @param key        缓存key，用于选择编码器
+     * @param value      缓存值
+     * @param expireTime 逻辑过期时间，为null表示不使用逻辑过期
+     * @return
+     */
+    public byte[] encode(String key, Object value, LocalDateTime expireTime) {
+        return encode(key, value, expireTime, null);
+    }
+
+    /**
+     * 编码缓存值
+     *
+     * @param key         缓存key，用于选择编码器
+     * @param value       缓存值
+     * @param expireTime  逻辑过期时间，为null表示不使用逻辑过期
+     * @param rebuildCost 重建耗时（毫秒），只在设置了逻辑过期时间时写入
+     * @return
+     */
+    public byte[] encode(String key, Object value, LocalDateTime expireTime, Long rebuildCost) {
+        CacheCodec codec = codecFor(key);
+        if (codec instanceof JsonCacheCodec || value == null || !supports(codec, value)) {
+            return encodeJson(value, expireTime, rebuildCost);
+        }
+        byte[] payload = codec.encode(value);
+        int headerLength = HEADER_LENGTH;
+        if (expireTime != null) {
+            headerLength += rebuildCost == null ? 8 : 16;
+        }
+        byte[] bytes = new byte[headerLength + payload.length];
+        bytes[0] = MAGIC;
+        bytes[1] = codec.id();
+        bytes[2] = codec.version();
+        if (expireTime != null) {
+            bytes[3] = FLAG_LOGICAL_EXPIRE;
+            writeLong(bytes, HEADER_LENGTH, toEpochMilli(expireTime));
+            if (rebuildCost != null) {
+                bytes[3] |= FLAG_REBUILD_COST;
+                writeLong(bytes, HEADER_LENGTH + 8, rebuildCost);
+            }
+        }
+        System.arraycopy(payload, 0, bytes, headerLength, payload.length);
+        return bytes;
+    }
+
+    private byte[] encodeJson(Object value, LocalDateTime expireTime, Long rebuildCost) {
+        if (expireTime == null) {
+            return jsonCodec.encode(value);
+        }
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(expireTime);
+        redisData.setRebuildCost(rebuildCost);
+        return jsonCodec.encode(redisData);
+    }
+
+    private boolean supports(CacheCodec codec, Object value) {
+        Class<?> type = value.getClass();
+        if (unsupportedTypes.contains(type)) {
+            return false;
+        }
+        if (codec instanceof BinaryCacheCodec && !((BinaryCacheCodec) codec).supports(type)) {
+            log.warn("{}不支持二进制编码，使用JSON编码", type.getName());
+            unsupportedTypes.add(type);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 解码缓存值
+     *
+     * @param bytes   缓存值，不能为空数组
+     * @param type    数据类型
+     * @param logical 缓存值是否是逻辑过期的格式，只对不带头部的JSON有意义
+     * @return 数据及逻辑过期时间；编码器未知、版本不一致、类结构不一致、数据被截断或不是逻辑过期的格式时返回null，按缓存未命中处理
+     */
+    public RedisData decode(byte[] bytes, Class<?> type, boolean logical) {
+        if (bytes[0] != MAGIC) {
+            return decodeJson(bytes, type, logical);
+        }
+        if (!hasHeader(bytes)) {
+            return null;
+        }
+        CacheCodec codec = codecsById.get(bytes[1]);
+        if (codec == null || codec.version() != bytes[2]) {
+            return null;
+        }
+        RawCacheValue raw = readHeader(bytes);
+        Object data = codec.decode(bytes, raw.getOffset(), raw.length(), type);
+        if (data == null) {
+            return null;
+        }
+        RedisData redisData = new RedisData();
+        redisData.setData(data);
+        redisData.setExpireTime(raw.getExpireTime());
+        redisData.setRebuildCost(raw.getRebuildCost());
+        return redisData;
+    }
+
+    /**
+     * 只解析头部，不解码数据，用于把数据原样写入响应
+     *
+     * @param bytes   缓存值
+     * @param codecId 期望的编码器id
+     * @return 不是该编码器当前版本写入的缓存值时返回null
+     */
+    public RawCacheValue readRaw(byte[] bytes, byte codecId) {
+        if (bytes.length < HEADER_LENGTH || bytes[0] != MAGIC || bytes[1] != codecId) {
+            return null;
+        }
+        CacheCodec codec = codecsById.get(codecId);
+        if (codec == null || codec.version() != bytes[2]) {
+            return null;
+        }
+        return readHeader(bytes);
+    }
+
+    /**
+     * 判断缓存值的长度是否足以容纳头部，被截断的按缓存未命中处理
+     */
+    private static boolean hasHeader(byte[] bytes) {
+        if (bytes.length < HEADER_LENGTH) {
+            return false;
+        }
+        int headerLength = HEADER_LENGTH;
+        if ((bytes[3] & FLAG_LOGICAL_EXPIRE) != 0) {
+            headerLength += 8;
+        }
+        if ((bytes[3] & FLAG_REBUILD_COST) != 0) {
+            headerLength += 8;
+        }
+        return bytes.length >= headerLength;
+    }
+
+    private static RawCacheValue readHeader(byte[] bytes) {
+        int headerLength = HEADER_LENGTH;
+        LocalDateTime expireTime = null;
+        Long rebuildCost = null;
+        if ((bytes[3] & FLAG_LOGICAL_EXPIRE) != 0) {
+            expireTime = readExpireTime(bytes);
+            headerLength += 8;
+        }
+        if ((bytes[3] & FLAG_REBUILD_COST) != 0) {
+            rebuildCost = readLong(bytes, headerLength);
+            headerLength += 8;
+        }
+        return new RawCacheValue(bytes, headerLength, expireTime, rebuildCost);
+    }
+
+    private RedisData decodeJson(byte[] bytes, Class<?> type, boolean logical) {
+        if (!logical) {
+            RedisData redisData = new RedisData();
+            redisData.setData(jsonCodec.decode(bytes, 0, bytes.length, type));
+            return redisData;
+        }
+        RedisData redisData = JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), RedisData.class);
+        if (redisData.getExpireTime() == null || !(redisData.getData() instanceof JSONObject)) {
+            // 不是RedisData的JSON，例如改为逻辑过期之前写入的缓存值
+            return null;
+        }
+        redisData.setData(JSONUtil.toBean((JSONObject) redisData.getData(), type));
+        return redisData;
+    }
+
+    /**
+     * 只读取头部中的逻辑过期时间
+     *
+     * @param bytes 带头部的缓存值
+     * @return
+     */
+    public static LocalDateTime readExpireTime(byte[] bytes) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(readLong(bytes, HEADER_LENGTH)), ZoneId.systemDefault());
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = 0; i < 8; i++) {
+            bytes[offset + i] = (byte) (value >>> ((7 - i) * 8));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.hmdp.utils;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 缓存失效事件
+ * 在事务中发布，事务提交后由CacheInvalidator异步删除缓存；没有事务时立即处理
+ */
+@Getter
+public class CacheInvalidateEvent {
+
+    private final List<String> keys;
+
+    public CacheInvalidateEvent(String... keys) {
+        this.keys = Arrays.asList(keys);
+    }
+
+    public CacheInvalidateEvent(Collection<String> keys) {
+        this.keys = new ArrayList<>(keys);
+    }
+}
@@ -0,0 +1,174 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 事务提交后的异步缓存失效
+ * 失效事件在事务提交后进入队列，由单独的线程合并成批，通过管道删除；
+ * 删除后延迟一段时间再删除一次，清理并发重建在删除之前读到旧数据、之后才写回的缓存；
+ * redis出错时按指数退避重试
+ */
+@Slf4j
+@Component
+public class CacheInvalidator {
+
+    private final CacheClient cacheClient;
+    private final BlockingQueue<String> queue;
+    private final int batchSize;
+    private final long delayMillis;
+    private final int maxRetries;
+
+    private final Thread worker;
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean running = true;
+
+    private final LongAdder invalidated = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public CacheInvalidator(CacheClient cacheClient,
+                            @Value("${hmdp.cache.invalidate.queue-capacity:10000}") int queueCapacity,
+                            @Value("${hmdp.cache.invalidate.batch-size:100}") int batchSize,
+                            @Value("${hmdp.cache.invalidate.delay-ms:500}") long delayMillis,
+                            @Value("${hmdp.cache.invalidate.max-retries:3}") int maxRetries) {
+        this.cacheClient = cacheClient;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.delayMillis = delayMillis;
+        this.maxRetries = maxRetries;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cache-invalidate-delay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.worker = new Thread(this::drain, "cache-invalidate");
+        this.worker.setDaemon(true);
+    }
+
+    /**
+     * 删除线程在初始化回调中启动，不在构造函数中启动
+     */
+    @PostConstruct
+    public void start() {
+        worker.start();
+    }
+
+    /**
+     * 事务提交后把需要删除的key放入队列；不在事务中发布的事件立即放入队列
+     *
+     * @param event
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onInvalidate(CacheInvalidateEvent event) {
+        for (String key : event.getKeys()) {
+            if (!queue.offer(key)) {
+                // 队列已满，在当前线程直接删除，不能丢失失效
+                delete(Collections.singleton(key), 0, true);
+            }
+        }
+    }
+
+    private void drain() {
+        List<String> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                String key = queue.poll(1, TimeUnit.SECONDS);
+                if (key == null) {
+                    continue;
+                }
+                batch.add(key);
+                queue.drainTo(batch, batchSize - 1);
+                // 同一批中重复的key只删除一次
+                Set<String> keys = new LinkedHashSet<>(batch);
+                batch.clear();
+                delete(keys, 0, true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 删除一批key
+     *
+     * @param keys        需要删除的key
+     * @param attempt     已重试的次数
+     * @param deleteAgain 删除成功后是否需要延迟再删除一次
+     */
+    private void delete(Set<String> keys, int attempt, boolean deleteAgain) {
+        try {
+            cacheClient.deleteBatch(keys);
+            batches.increment();
+            if (deleteAgain) {
+                invalidated.add(keys.size());
+                schedule(() -> delete(keys, 0, false), delayMillis);
+            }
+        } catch (Exception e) {
+            if (attempt >= maxRetries) {
+                dropped.add(keys.size());
+                log.error("缓存删除失败，已重试{}次，key：{}", attempt, keys, e);
+                return;
+            }
+            retries.increment();
+            log.warn("缓存删除失败，稍后重试，key：{}", keys, e);
+            schedule(() -> delete(keys, attempt + 1, deleteAgain), delayMillis << attempt);
+        }
+    }
+
+    private void schedule(Runnable task, long delay) {
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("queueDepth", queue.size());
+        map.put("invalidated", invalidated.sum());
+        map.put("batches", batches.sum());
+        map.put("retries", retries.sum());
+        map.put("dropped", dropped.sum());
+        return map;
+    }
+
+    /**
+     * 随Spring容器关闭：处理完队列中的失效，等待延迟删除执行完
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        worker.join(TimeUnit.SECONDS.toMillis(5));
+        scheduler.shutdown();
+        scheduler.awaitTermination(delayMillis + 1000, TimeUnit.MILLISECONDS);
+    }
+}
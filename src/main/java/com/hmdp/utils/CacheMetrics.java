@@ -0,0 +1,99 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 缓存指标，按key前缀和查询策略打标签
+ * <ul>
+ *     <li>cache.gets：查询结果，result为local_hit、hit、null_hit、miss、rejected（布隆过滤器拦截），
+ *     以及stale（返回了逻辑过期的数据，同时计入local_hit或hit）</li>
+ *     <li>cache.lock：重建锁，result为acquired、contended</li>
+ *     <li>cache.load：查询数据库的耗时</li>
+ *     <li>cache.operation：CacheClient各操作的耗时</li>
+ * </ul>
+ */
+@Component
+public class CacheMetrics {
+
+    public static final String LOCAL_HIT = "local_hit";
+    public static final String HIT = "hit";
+    public static final String NULL_HIT = "null_hit";
+    public static final String STALE = "stale";
+    public static final String MISS = "miss";
+    public static final String REJECTED = "rejected";
+
+    private final MeterRegistry registry;
+
+    /**
+     * 缓存创建好的计数器和计时器，避免每次记录都重新查找
+     */
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public CacheMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void recordGet(String keyPrefix, Object strategy, String result) {
+        recordGets(keyPrefix, strategy, result, 1);
+    }
+
+    public void recordGets(String keyPrefix, Object strategy, String result, long count) {
+        if (count <= 0) {
+            return;
+        }
+        String strategyName = tagValue(strategy);
+        counters.computeIfAbsent("gets|" + keyPrefix + "|" + strategyName + "|" + result,
+                k -> Counter.builder("cache.gets")
+                        .tag("prefix", keyPrefix).tag("strategy", strategyName).tag("result", result)
+                        .register(registry))
+                .increment(count);
+    }
+
+    public void recordLock(String keyPrefix, boolean acquired) {
+        String result = acquired ? "acquired" : "contended";
+        counters.computeIfAbsent("lock|" + keyPrefix + "|" + result,
+                k -> Counter.builder("cache.lock").tag("prefix", keyPrefix).tag("result", result).register(registry))
+                .increment();
+    }
+
+    /**
+     * 记录查询数据库的耗时
+     */
+    public <R> R timeLoad(String keyPrefix, Supplier<R> loader) {
+        return time(timers.computeIfAbsent("load|" + keyPrefix,
+                k -> Timer.builder("cache.load").tag("prefix", keyPrefix).register(registry)), loader);
+    }
+
+    /**
+     * 记录CacheClient操作的耗时
+     */
+    public <R> R timeOperation(String operation, String keyPrefix, Object strategy, Supplier<R> supplier) {
+        String strategyName = tagValue(strategy);
+        return time(timers.computeIfAbsent("op|" + operation + "|" + keyPrefix + "|" + strategyName,
+                k -> Timer.builder("cache.operation")
+                        .tag("operation", operation).tag("prefix", keyPrefix).tag("strategy", strategyName)
+                        .register(registry)), supplier);
+    }
+
+    private static <R> R time(Timer timer, Supplier<R> supplier) {
+        long begin = System.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            timer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static String tagValue(Object strategy) {
+        return strategy == null ? "none" : strategy.toString().toLowerCase();
+    }
+}
@@ -0,0 +1,247 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存重建线程池，所有异步重建共用
+ * 队列有界，同一个key同时只会有一个重建任务在排队或执行；队列满时按配置的拒绝策略处理
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+
+    /**
+     * 队列满时的拒绝策略
+     */
+    public enum RejectPolicy {
+        /**
+         * 丢弃新任务，调用方继续使用旧数据
+         */
+        DISCARD,
+        /**
+         * 丢弃队列中最旧的任务，再提交新任务
+         */
+        DISCARD_OLDEST,
+        /**
+         * 由提交任务的线程直接执行
+         */
+        CALLER_RUNS;
+
+        public static RejectPolicy of(String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final BlockingQueue<Runnable> queue;
+    private final RejectPolicy rejectPolicy;
+    private final long shutdownTimeoutSeconds;
+
+    /**
+     * 正在排队或执行的key
+     */
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Timer latencyTimer;
+
+    public CacheRebuildExecutor(MeterRegistry registry,
+                                @Value("${hmdp.cache.rebuild.threads:10}") int threads,
+                                @Value("${hmdp.cache.rebuild.queue-capacity:1000}") int queueCapacity,
+                                @Value("${hmdp.cache.rebuild.reject-policy:discard}") String rejectPolicy,
+                                @Value("${hmdp.cache.rebuild.shutdown-timeout-seconds:10}") long shutdownTimeoutSeconds) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue, r -> {
+            Thread thread = new Thread(r, "cache-rebuild-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.rejectPolicy = RejectPolicy.of(rejectPolicy);
+        this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+        // 单个重建任务的执行耗时，不含排队时间
+        this.latencyTimer = Timer.builder("cache.rebuild.latency")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+    }
+
+    /**
+     * 提交重建任务
+     *
+     * @param key  缓存key，同一个key已有任务在排队或执行时不再提交
+     * @param task 重建任务
+     * @return 任务是否被接受
+     */
+    public boolean submit(String key, Runnable task) {
+        return submit(key, task, null);
+    }
+
+    /**
+     * 提交重建任务
+     *
+     * @param key       缓存key，同一个key已有任务在排队或执行时不再提交
+     * @param task      重建任务
+     * @param onDiscard 任务被接受后没有执行就被丢弃时调用（队列满时丢弃最旧的任务、关闭时未执行的任务），用于释放任务持有的锁；
+     *                  返回false时不会调用，由调用方自行处理
+     * @return 任务是否被接受
+     */
+    public boolean submit(String key, Runnable task, Runnable onDiscard) {
+        if (!pendingKeys.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        KeyedTask keyedTask = new KeyedTask(key, task, onDiscard);
+        try {
+            executor.execute(keyedTask);
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            return onRejected(keyedTask);
+        }
+    }
+
+    private boolean onRejected(KeyedTask task) {
+        rejected.increment();
+        if (!executor.isShutdown()) {
+            switch (rejectPolicy) {
+                case CALLER_RUNS:
+                    submitted.increment();
+                    task.run();
+                    return true;
+                case DISCARD_OLDEST:
+                    Runnable oldest = queue.poll();
+                    if (oldest instanceof KeyedTask) {
+                        ((KeyedTask) oldest).discard();
+                    }
+                    try {
+                        executor.execute(task);
+                        submitted.increment();
+                        return true;
+                    } catch (RejectedExecutionException ignored) {
+                        // 仍然被拒绝，按丢弃处理
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        pendingKeys.remove(task.key);
+        log.warn("缓存重建队列已满，丢弃key：{}", task.key);
+        return false;
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    public int active() {
+        return executor.getActiveCount();
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("queueDepth", queue.size());
+        map.put("active", executor.getActiveCount());
+        map.put("submitted", submitted.sum());
+        map.put("deduplicated", deduplicated.sum());
+        map.put("rejected", rejected.sum());
+        map.put("completed", completed.sum());
+        map.put("failed", failed.sum());
+        for (ValueAtPercentile percentile : latencyTimer.takeSnapshot().percentileValues()) {
+            map.put("latencyP" + Math.round(percentile.percentile() * 100) + "Ms",
+                    percentile.value(TimeUnit.MILLISECONDS));
+        }
+        return map;
+    }
+
+    /**
+     * 随Spring容器关闭：不再接收新任务，等待已提交的任务执行完
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+            List<Runnable> dropped = executor.shutdownNow();
+            for (Runnable task : dropped) {
+                if (task instanceof KeyedTask) {
+                    ((KeyedTask) task).discard();
+                }
+            }
+            log.warn("缓存重建线程池关闭超时，剩余{}个任务被丢弃", dropped.size());
+        }
+    }
+
+    private class KeyedTask implements Runnable {
+        private final String key;
+        private final Runnable task;
+        private final Runnable onDiscard;
+
+        KeyedTask(String key, Runnable task, Runnable onDiscard) {
+            this.key = key;
+            this.task = task;
+            this.onDiscard = onDiscard;
+        }
+
+        /**
+         * 没有执行就被丢弃
+         */
+        void discard() {
+            pendingKeys.remove(key);
+            log.warn("丢弃排队中的缓存重建任务，key：{}", key);
+            if (onDiscard == null) {
+                return;
+            }
+            try {
+                onDiscard.run();
+            } catch (Exception e) {
+                log.error("释放被丢弃的缓存重建任务失败，key：{}", key, e);
+            }
+        }
+
+        @Override
+        public void run() {
+            long begin = System.nanoTime();
+            try {
+                task.run();
+                completed.increment();
+            } catch (Throwable e) {
+                failed.increment();
+                log.error("缓存重建失败，key：{}", key, e);
+            } finally {
+                pendingKeys.remove(key);
+                latencyTimer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
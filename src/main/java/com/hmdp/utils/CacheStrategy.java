@@ -0,0 +1,27 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存查询策略，可以按key前缀配置
+ */
+public enum CacheStrategy {
+    /**
+     * 缓存空值解决缓存穿透，未命中时查询数据库
+     */
+    PASS_THROUGH,
+    /**
+     * 互斥锁解决缓存击穿，未命中时只有获取到锁的线程查询数据库，其它线程等待后重新读取缓存
+     */
+    MUTEX,
+    /**
+     * 逻辑过期解决缓存击穿，过期后获取互斥锁异步重建，期间返回旧数据
+     */
+    LOGICAL_EXPIRE,
+    /**
+     * 概率提前刷新（XFetch），越接近过期、重建越耗时，提前刷新的概率越大，不需要加锁
+     */
+    EARLY_REFRESH;
+
+    public static CacheStrategy of(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,236 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import com.hmdp.mapper.VoucherMapper;
+import com.hmdp.service.IShopService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 缓存预热
+ * 按id顺序分批读取店铺和优惠券，店铺通过管道写入带逻辑过期时间的缓存，秒杀券的库存和秒杀时间写入SECKILL_STOCK_KEY和SECKILL_META_KEY
+ * 读库在当前线程顺序进行，写redis并行进行；多个节点之间只有获取到锁的节点执行
+ */
+@Slf4j
+@Component
+public class CacheWarmer implements ApplicationRunner {
+
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private VoucherMapper voucherMapper;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillGate seckillGate;
+    @Resource
+    private RedisLock redisLock;
+
+    @Value("${hmdp.cache.warm-up.on-startup:true}")
+    private boolean onStartup;
+
+    @Value("${hmdp.cache.warm-up.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${hmdp.cache.warm-up.threads:4}")
+    private int threads;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong shopCount = new AtomicLong();
+    private final AtomicLong seckillStockCount = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private volatile String status = "IDLE";
+    private volatile long startTime;
+    private volatile long endTime;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (onStartup) {
+            startAsync();
+        }
+    }
+
+    /**
+     * 在后台线程中执行预热
+     *
+     * @return 本节点已有预热任务在执行时返回false
+     */
+    public boolean startAsync() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                warmUp();
+            } catch (Exception e) {
+                status = "FAILED";
+                log.error("缓存预热失败", e);
+            } finally {
+                running.set(false);
+            }
+        }, "cache-warmer");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    private void warmUp() {
+        RedisLock.Lease lease = redisLock.tryLock(LOCK_WARM_UP_KEY);
+        if (lease == null) {
+            status = "SKIPPED";
+            log.info("其它节点正在预热缓存，本节点跳过");
+            return;
+        }
+        shopCount.set(0);
+        seckillStockCount.set(0);
+        failedBatches.set(0);
+        startTime = System.currentTimeMillis();
+        endTime = 0;
+        status = "RUNNING";
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // 限制已读出但还没写入的批次数，避免读库快于写redis时占用过多内存
+        Semaphore permits = new Semaphore(threads * 2);
+        try {
+            warmUpShops(executor, permits);
+            warmUpSeckillStocks(executor, permits);
+            executor.shutdown();
+            if (!executor.awaitTermination(10, TimeUnit.MINUTES)) {
+                // 写redis超时，finally中中断未完成的批次，不能报告为完成
+                status = "TIMEOUT";
+                log.warn("缓存预热等待写入超时，剩余批次被中断");
+            } else {
+                status = failedBatches.get() == 0 ? "DONE" : "DONE_WITH_ERRORS";
+            }
+        } catch (Exception e) {
+            status = "FAILED";
+            log.error("缓存预热失败", e);
+        } finally {
+            executor.shutdownNow();
+            endTime = System.currentTimeMillis();
+            lease.unlock();
+            log.info("缓存预热结束：{}", progress());
+        }
+    }
+
+    private void warmUpShops(ExecutorService executor, Semaphore permits) throws InterruptedException {
+        long lastId = 0;
+        while (true) {
+            List<Shop> shops = shopService.query()
+                    .gt("id", lastId).orderByAsc("id").last("LIMIT " + batchSize).list();
+            if (shops.isEmpty()) {
+                return;
+            }
+            Map<Long, Shop> batch = shops.stream()
+                    .collect(Collectors.toMap(Shop::getId, Function.identity(), (a, b) -> a, LinkedHashMap::new));
+            // 每批的过期时间随机增加最多20%，避免所有店铺在同一时刻逻辑过期
+            long ttlSeconds = TimeUnit.MINUTES.toSeconds(CACHE_SHOP_TTL);
+            long expireSeconds = ttlSeconds + ThreadLocalRandom.current().nextLong(ttlSeconds / 5 + 1);
+            submit(executor, permits, () -> {
+                cacheClient.setBatch(CACHE_SHOP_KEY, batch, expireSeconds, TimeUnit.SECONDS);
+                shopCount.addAndGet(batch.size());
+            });
+            if (shops.size() < batchSize) {
+                return;
+            }
+            lastId = shops.get(shops.size() - 1).getId();
+        }
+    }
+
+    private void warmUpSeckillStocks(ExecutorService executor, Semaphore permits) throws InterruptedException {
+        long lastId = 0;
+        while (true) {
+            List<Voucher> vouchers = voucherMapper.queryVoucherAfter(lastId, batchSize);
+            if (vouchers.isEmpty()) {
+                return;
+            }
+            List<Voucher> seckills = vouchers.stream().filter(v -> v.getStock() != null).collect(Collectors.toList());
+            submit(executor, permits, () -> {
+                // 库存只在不存在时写入，不能覆盖秒杀过程中已经扣减过的库存
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (Voucher voucher : seckills) {
+                        // 秒杀时间同时用于秒杀准入和覆盖店铺优惠券列表缓存中的值
+                        if (voucher.getBeginTime() != null && voucher.getEndTime() != null) {
+                            seckillGate.preheat(connection, voucher.getId(), voucher.getStock(),
+                                    voucher.getBeginTime(), voucher.getEndTime(), false);
+                        } else {
+                            connection.setNX(bytes(SECKILL_STOCK_KEY + voucher.getId()),
+                                    bytes(voucher.getStock().toString()));
+                        }
+                    }
+                    return null;
+                });
+                for (Voucher voucher : seckills) {
+                    if (voucher.getBeginTime() != null && voucher.getEndTime() != null) {
+                        seckillGate.register(voucher.getId(), voucher.getBeginTime(), voucher.getEndTime());
+                    }
+                }
+                seckillStockCount.addAndGet(seckills.size());
+            });
+            if (vouchers.size() < batchSize) {
+                return;
+            }
+            lastId = vouchers.get(vouchers.size() - 1).getId();
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void submit(ExecutorService executor, Semaphore permits, Runnable task) throws InterruptedException {
+        permits.acquire();
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                failedBatches.incrementAndGet();
+                log.error("缓存预热写入失败", e);
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * 查询预热进度
+     *
+     * @return 状态、已写入的店铺数和秒杀库存数、耗时等
+     */
+    public Map<String, Object> progress() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("status", status);
+        progress.put("shops", shopCount.get());
+        progress.put("seckillStocks", seckillStockCount.get());
+        progress.put("failedBatches", failedBatches.get());
+        if (startTime > 0) {
+            long end = endTime == 0 ? System.currentTimeMillis() : endTime;
+            progress.put("elapsedMs", end - startTime);
+        }
+        return progress;
+    }
+}
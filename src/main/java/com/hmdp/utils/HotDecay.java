@@ -0,0 +1,27 @@
+package com.hmdp.utils;
+
+/**
+ * 热门笔记的时间衰减函数，分数在blog_hot.lua中计算，热度 weight = 1 + 点赞数 * 点赞权重 + 评论数 * 评论权重
+ */
+public enum HotDecay {
+    /**
+     * 不衰减，按热度排序
+     */
+    NONE,
+    /**
+     * 指数衰减，每经过一个半衰期热度减半；按 ln(weight) + 发布时间 * ln2 / 半衰期 排序，与当前时间无关，只在事件发生时更新
+     */
+    EXPONENTIAL,
+    /**
+     * 重力衰减（Hacker News），weight / (发布小时数 + 2)^gravity，分数随时间变化，需要定期重新计算
+     */
+    GRAVITY;
+
+    public static HotDecay of(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+
+    public String scriptName() {
+        return name().toLowerCase();
+    }
+}
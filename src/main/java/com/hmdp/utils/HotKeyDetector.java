@@ -0,0 +1,190 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * 热点key探测
+ * 按采样率记录key的访问，使用滑动窗口上的Count-Min Sketch估算每个key在窗口内的访问次数，
+ * 超过阈值的key成为热点key（最多保留top-K个），估算值降到阈值的一半以下时冷却
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+
+    private static final int DEPTH = 4;
+
+    private final boolean enabled;
+    private final double sampleRate;
+    private final long threshold;
+    private final int topK;
+    private final int width;
+
+    /**
+     * 滑动窗口的每个时间片对应一个Sketch，current指向正在写入的时间片
+     */
+    private final AtomicLongArray[] slots;
+    private volatile int current;
+
+    /**
+     * 当前的热点key及其窗口内的估算访问次数
+     */
+    private final Map<String, Long> hotKeys = new ConcurrentHashMap<>();
+
+    private final List<Consumer<String>> coolDownListeners = new CopyOnWriteArrayList<>();
+
+    public HotKeyDetector(@Value("${hmdp.cache.hot-key.enabled:true}") boolean enabled,
+                          @Value("${hmdp.cache.hot-key.sample-rate:0.1}") double sampleRate,
+                          @Value("${hmdp.cache.hot-key.threshold:1000}") long threshold,
+                          @Value("${hmdp.cache.hot-key.top-k:50}") int topK,
+                          @Value("${hmdp.cache.hot-key.window-slots:5}") int windowSlots,
+                          @Value("${hmdp.cache.hot-key.sketch-width:4096}") int width) {
+        this.enabled = enabled;
+        this.sampleRate = sampleRate;
+        this.threshold = threshold;
+        this.topK = topK;
+        this.width = width;
+        this.slots = new AtomicLongArray[windowSlots];
+        for (int i = 0; i < windowSlots; i++) {
+            slots[i] = new AtomicLongArray(DEPTH * width);
+        }
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key
+     */
+    public void record(String key) {
+        if (!enabled || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        AtomicLongArray sketch = slots[current];
+        int h1 = key.hashCode();
+        int h2 = mix(h1);
+        for (int i = 0; i < DEPTH; i++) {
+            sketch.incrementAndGet(i * width + index(h1, h2, i));
+        }
+        long estimate = estimate(h1, h2);
+        if (estimate >= threshold && !hotKeys.containsKey(key)) {
+            promote(key, estimate);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isHot(String key) {
+        return !hotKeys.isEmpty() && hotKeys.containsKey(key);
+    }
+
+    /**
+     * 注册热点key冷却时的回调，用于清理本地副本
+     *
+     * @param listener
+     */
+    public void addCoolDownListener(Consumer<String> listener) {
+        coolDownListeners.add(listener);
+    }
+
+    /**
+     * 按估算访问次数从高到低返回当前的热点key
+     *
+     * @return
+     */
+    public Map<String, Long> hotKeys() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(hotKeys.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        Map<String, Long> result = new LinkedHashMap<>();
+        entries.forEach(e -> result.put(e.getKey(), e.getValue()));
+        return result;
+    }
+
+    /**
+     * 滑动窗口前进一个时间片：清空最旧的时间片并重新评估热点key
+     */
+    @Scheduled(fixedRateString = "${hmdp.cache.hot-key.slot-ms:2000}")
+    public void rotate() {
+        if (!enabled) {
+            return;
+        }
+        int next = (current + 1) % slots.length;
+        AtomicLongArray sketch = slots[next];
+        for (int i = 0; i < sketch.length(); i++) {
+            sketch.set(i, 0);
+        }
+        current = next;
+        for (String key : hotKeys.keySet()) {
+            int h1 = key.hashCode();
+            long estimate = estimate(h1, mix(h1));
+            if (estimate * 2 < threshold) {
+                hotKeys.remove(key);
+                log.info("热点key冷却：{}", key);
+                coolDownListeners.forEach(listener -> listener.accept(key));
+            } else {
+                hotKeys.put(key, estimate);
+            }
+        }
+    }
+
+    private synchronized void promote(String key, long estimate) {
+        if (hotKeys.size() >= topK) {
+            // 已满时替换估算值最小的热点key
+            Map.Entry<String, Long> min = null;
+            for (Map.Entry<String, Long> entry : hotKeys.entrySet()) {
+                if (min == null || entry.getValue() < min.getValue()) {
+                    min = entry;
+                }
+            }
+            if (min == null || min.getValue() >= estimate) {
+                return;
+            }
+            hotKeys.remove(min.getKey());
+            String evicted = min.getKey();
+            coolDownListeners.forEach(listener -> listener.accept(evicted));
+        }
+        hotKeys.put(key, estimate);
+        log.info("发现热点key：{}，窗口内估算访问次数：{}", key, estimate);
+    }
+
+    /**
+     * 窗口内所有时间片的估算值之和，按采样率还原为实际访问次数
+     */
+    private long estimate(int h1, int h2) {
+        long total = 0;
+        for (AtomicLongArray sketch : slots) {
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < DEPTH; i++) {
+                min = Math.min(min, sketch.get(i * width + index(h1, h2, i)));
+            }
+            total += min;
+        }
+        return (long) (total / sampleRate);
+    }
+
+    private int index(int h1, int h2, int row) {
+        return ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h | 1;
+    }
+}
@@ -0,0 +1,40 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 默认的JSON编码器，写入的是不带头部的JSON文本，与之前的缓存格式完全兼容
+ */
+@Component
+public class JsonCacheCodec implements CacheCodec {
+
+    public static final String NAME = "json";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte id() {
+        return 0;
+    }
+
+    @Override
+    public byte version() {
+        return 1;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, int offset, int length, Class<T> type) {
+        return JSONUtil.toBean(new String(bytes, offset, length, StandardCharsets.UTF_8), type);
+    }
+}
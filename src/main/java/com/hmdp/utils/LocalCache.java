@@ -0,0 +1,184 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内一级缓存（L1），位于Redis（L2）之前
+ * 只缓存配置了前缀的key，各节点之间通过Redis发布订阅进行失效通知；
+ * 其它前缀的key被探测为热点key后，在本地保留一个短时间的副本，冷却后清除
+ */
+@Slf4j
+@Component
+public class LocalCache {
+
+    private final Cache<String, Object> cache;
+
+    /**
+     * 热点key的本地副本，过期时间较短
+     */
+    private final Cache<String, Object> hotCache;
+
+    private final HotKeyDetector hotKeyDetector;
+
+    private final List<String> prefixes;
+
+    /**
+     * 收到的失效通知数量
+     */
+    private final LongAdder invalidations = new LongAdder();
+    /**
+     * 失效通知从发布到本节点处理的累计延迟（毫秒）
+     */
+    private final LongAdder invalidationLagTotal = new LongAdder();
+    private final AtomicLong invalidationLagMax = new AtomicLong();
+
+    public LocalCache(@Value("${hmdp.cache.local.maximum-size:10000}") long maximumSize,
+                      @Value("${hmdp.cache.local.expire-seconds:30}") long expireSeconds,
+                      @Value("${hmdp.cache.local.prefixes:cache:shop:}") String prefixes,
+                      @Value("${hmdp.cache.hot-key.local-ttl-ms:2000}") long hotTtlMillis,
+                      HotKeyDetector hotKeyDetector) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        this.prefixes = StrUtil.splitTrim(prefixes, ',');
+        this.hotCache = Caffeine.newBuilder()
+                .maximumSize(1000)
+                .expireAfterWrite(hotTtlMillis, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        this.hotKeyDetector = hotKeyDetector;
+        hotKeyDetector.addCoolDownListener(hotCache::invalidate);
+    }
+
+    /**
+     * 判断key是否启用了本地缓存
+     *
+     * @param key
+     * @return
+     */
+    public boolean isEnabled(String key) {
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 判断key是否可能在某个节点的本地缓存中，用来决定更新时是否需要广播失效通知
+     * 只有配置了前缀的key和本节点当前探测为热点的key才广播；请求均匀分布时各节点的热点基本一致，
+     * 个别只在其它节点上是热点的副本最多保留hot-key.local-ttl-ms
+     *
+     * @param key
+     * @return
+     */
+    public boolean mayHold(String key) {
+        return isEnabled(key) || hotKeyDetector.isHot(key);
+    }
+
+    public <R> R get(String key, Class<R> type) {
+        // 所有经过本地缓存的读取都参与热点探测
+        hotKeyDetector.record(key);
+        Object value = isEnabled(key) ? cache.getIfPresent(key) : hotCache.getIfPresent(key);
+        // 类型不一致时当作未命中处理
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    public void put(String key, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (isEnabled(key)) {
+            cache.put(key, value);
+        } else if (hotKeyDetector.isHot(key)) {
+            hotCache.put(key, value);
+        }
+    }
+
+    public void invalidate(String key) {
+        cache.invalidate(key);
+        hotCache.invalidate(key);
+    }
+
+    /**
+     * 处理其它节点发布的失效通知，消息格式为：发布时间戳:key
+     *
+     * @param message
+     */
+    public void onInvalidateMessage(String message) {
+        int index = message.indexOf(':');
+        if (index < 0) {
+            log.warn("非法的缓存失效通知：{}", message);
+            return;
+        }
+        String key = message.substring(index + 1);
+        invalidate(key);
+        long sentAt;
+        try {
+            sentAt = Long.parseLong(message.substring(0, index));
+        } catch (NumberFormatException e) {
+            log.warn("缓存失效通知的时间戳非法：{}", message);
+            return;
+        }
+        // 统计失效延迟，节点间时钟可能存在偏差，负数按0处理
+        long lag = Math.max(0, System.currentTimeMillis() - sentAt);
+        invalidations.increment();
+        invalidationLagTotal.add(lag);
+        invalidationLagMax.accumulateAndGet(lag, Math::max);
+    }
+
+    /**
+     * 构造失效通知消息
+     *
+     * @param key
+     * @return
+     */
+    public static String invalidateMessage(String key) {
+        return System.currentTimeMillis() + ":" + key;
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    public double hitRate() {
+        return cache.stats().hitRate();
+    }
+
+    public long hotSize() {
+        return hotCache.estimatedSize();
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        long count = invalidations.sum();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("size", cache.estimatedSize());
+        map.put("hitCount", stats.hitCount());
+        map.put("missCount", stats.missCount());
+        map.put("hitRate", stats.hitRate());
+        map.put("evictionCount", stats.evictionCount());
+        map.put("invalidationCount", count);
+        map.put("invalidationLagAvgMs", count == 0 ? 0 : invalidationLagTotal.sum() / count);
+        map.put("invalidationLagMaxMs", invalidationLagMax.get());
+        map.put("hotSize", hotCache.estimatedSize());
+        map.put("hotHitCount", hotCache.stats().hitCount());
+        return map;
+    }
+}
@@ -0,0 +1,229 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_META_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * 秒杀库存的本地令牌
+ * 开启后每个节点从SECKILL_STOCK_KEY中按批租用库存，在本地用原子计数器售卖，大部分请求不需要访问库存key；
+ * 租用本身是redis中的原子扣减，所有节点租到的总数不会超过库存，因此不会超卖。
+ * 秒杀结束或节点关闭时，未售出的令牌归还到redis
+ */
+@Slf4j
+@Component
+public class LocalStockPool {
+
+    private static final DefaultRedisScript<List<Long>> LEASE_SCRIPT = RedisScripts.listScript("seckill_lease.lua");
+
+    /**
+     * 以下返回值与seckill.lua一致
+     */
+    public static final int OK = 0;
+    public static final int SOLD_OUT = 1;
+    public static final int NOT_STARTED = 3;
+    public static final int ENDED = 4;
+    public static final int NOT_FOUND = 5;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long soldOutRecheckMillis;
+
+    private final Map<Long, Pool> pools = new ConcurrentHashMap<>();
+
+    private final LongAdder localDecisions = new LongAdder();
+    private final LongAdder leases = new LongAdder();
+    private final LongAdder returned = new LongAdder();
+
+    public LocalStockPool(StringRedisTemplate stringRedisTemplate, MeterRegistry registry,
+                          @Value("${hmdp.seckill.local-stock.enabled:false}") boolean enabled,
+                          @Value("${hmdp.seckill.local-stock.batch-size:20}") int batchSize,
+                          @Value("${hmdp.seckill.local-stock.sold-out-recheck-ms:1000}") long soldOutRecheckMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.soldOutRecheckMillis = soldOutRecheckMillis;
+        Gauge.builder("seckill.stock.local.tokens", this, LocalStockPool::tokens).register(registry);
+        FunctionCounter.builder("seckill.stock.local.decisions", this, LocalStockPool::localDecisionCount).register(registry);
+        FunctionCounter.builder("seckill.stock.local.leases", this, LocalStockPool::leaseCount).register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 一个秒杀券在本节点的令牌
+     */
+    private static class Pool {
+        private final AtomicInteger tokens = new AtomicInteger();
+        /**
+         * 秒杀结束时间（毫秒），租用时从redis读取，0表示未知
+         */
+        private volatile long endTime;
+        /**
+         * 租不到库存后，在该时间之前直接判定为售罄；其它节点归还令牌后可以重新租到
+         */
+        private volatile long soldOutUntil;
+    }
+
+    /**
+     * 获取一个令牌
+     *
+     * @param voucherId 秒杀券id
+     * @return OK表示获取成功，其它值为失败的原因
+     */
+    public int acquire(Long voucherId) {
+        Pool pool = pools.computeIfAbsent(voucherId, id -> new Pool());
+        while (true) {
+            long now = System.currentTimeMillis();
+            if (pool.endTime > 0 && now > pool.endTime) {
+                localDecisions.increment();
+                return ENDED;
+            }
+            int tokens = pool.tokens.get();
+            if (tokens > 0) {
+                if (pool.tokens.compareAndSet(tokens, tokens - 1)) {
+                    localDecisions.increment();
+                    return OK;
+                }
+                continue;
+            }
+            if (now < pool.soldOutUntil) {
+                localDecisions.increment();
+                return SOLD_OUT;
+            }
+            synchronized (pool) {
+                // 同一个秒杀券只有一个线程去租用，其它线程等待后重新判断
+                if (pool.tokens.get() > 0 || now < pool.soldOutUntil) {
+                    continue;
+                }
+                int result = lease(voucherId, pool, now);
+                if (result != OK) {
+                    return result;
+                }
+            }
+        }
+    }
+
+    private int lease(Long voucherId, Pool pool, long now) {
+        List<Long> result = stringRedisTemplate.execute(LEASE_SCRIPT,
+                Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_META_KEY + voucherId),
+                String.valueOf(batchSize), String.valueOf(now));
+        leases.increment();
+        if (result == null || result.size() < 2) {
+            return NOT_FOUND;
+        }
+        long n = result.get(0);
+        pool.endTime = result.get(1);
+        if (n < 0) {
+            return (int) -n;
+        }
+        if (n == 0) {
+            pool.soldOutUntil = now + soldOutRecheckMillis;
+            return SOLD_OUT;
+        }
+        pool.tokens.addAndGet((int) n);
+        return OK;
+    }
+
+    /**
+     * 归还一个已获取的令牌到本地，例如用户重复下单时
+     */
+    public void release(Long voucherId) {
+        Pool pool = pools.get(voucherId);
+        if (pool != null) {
+            pool.tokens.incrementAndGet();
+        } else {
+            stringRedisTemplate.opsForValue().increment(SECKILL_STOCK_KEY + voucherId);
+        }
+    }
+
+    /**
+     * 把一个秒杀券未售出的令牌归还到redis
+     */
+    private void giveBack(Long voucherId, Pool pool) {
+        int tokens = pool.tokens.getAndSet(0);
+        if (tokens <= 0) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForValue().increment(SECKILL_STOCK_KEY + voucherId, tokens);
+            returned.add(tokens);
+        } catch (Exception e) {
+            // 下次检查时再归还
+            pool.tokens.addAndGet(tokens);
+            log.warn("归还秒杀券{}的{}个本地令牌失败", voucherId, tokens, e);
+        }
+    }
+
+    /**
+     * 秒杀结束后归还令牌并清理
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.local-stock.check-interval-ms:1000}")
+    public void returnExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Long, Pool>> iterator = pools.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Pool> entry = iterator.next();
+            Pool pool = entry.getValue();
+            if (pool.endTime > 0 && now > pool.endTime) {
+                giveBack(entry.getKey(), pool);
+                if (pool.tokens.get() == 0) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public int tokens() {
+        return pools.values().stream().mapToInt(pool -> pool.tokens.get()).sum();
+    }
+
+    public long localDecisionCount() {
+        return localDecisions.sum();
+    }
+
+    public long leaseCount() {
+        return leases.sum();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("enabled", enabled);
+        map.put("vouchers", pools.size());
+        map.put("tokens", pools.values().stream().mapToInt(pool -> pool.tokens.get()).sum());
+        map.put("localDecisions", localDecisions.sum());
+        map.put("leases", leases.sum());
+        map.put("returned", returned.sum());
+        return map;
+    }
+
+    /**
+     * 节点下线时归还全部未售出的令牌
+     */
+    @PreDestroy
+    public void drain() {
+        pools.forEach(this::giveBack);
+    }
+}
@@ -0,0 +1,316 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.VoucherOrderMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.ORDER_TIMEOUT_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * 未支付订单超时取消
+ * 订单写入数据库之前，把支付截止时间记录到redis的ZSET（ORDER_TIMEOUT_KEY，score为截止时间），同时放入本地的分层时间轮；
+ * 时间轮每个tick取出到期的订单，按批取消：先通过order_claim.lua把分数改为租约到期时间（多个节点同时到期时只有改成功的节点处理），
+ * 在一个事务中把仍未支付的订单改为已取消并归还数据库库存，提交后归还redis中的库存和下单资格，最后才从ZSET中移除；
+ * 处理期间宕机时订单仍在ZSET中，租约到期后重新处理。
+ * 重启或其它节点宕机时，由定期的重新加载把即将到期的订单从ZSET放回时间轮，不需要扫描订单表
+ */
+@Slf4j
+@Component
+public class OrderTimeoutCanceller {
+
+    private static final DefaultRedisScript<Long> CANCEL_SCRIPT;
+    private static final DefaultRedisScript<List<String>> CLAIM_SCRIPT = RedisScripts.listScript("order_claim.lua");
+
+    static {
+        CANCEL_SCRIPT = new DefaultRedisScript<>();
+        CANCEL_SCRIPT.setLocation(new ClassPathResource("order_cancel.lua"));
+        CANCEL_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 每次重新加载最多读取的订单数
+     */
+    private static final int MAX_RELOAD = 10000;
+
+    private static final byte[] RAW_KEY = ORDER_TIMEOUT_KEY.getBytes(StandardCharsets.UTF_8);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final VoucherOrderMapper voucherOrderMapper;
+    private final SeckillVoucherMapper seckillVoucherMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final long payTimeoutMillis;
+    private final int batchSize;
+    private final long reloadIntervalMillis;
+    private final long retryDelayMillis;
+    private final long tickMillis;
+
+    /**
+     * 只在持有自身的锁时访问
+     */
+    private final TimingWheel wheel;
+    private final ScheduledExecutorService ticker;
+
+    private final LongAdder scheduled = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder restoreFailed = new LongAdder();
+
+    public OrderTimeoutCanceller(StringRedisTemplate stringRedisTemplate, VoucherOrderMapper voucherOrderMapper,
+                                 SeckillVoucherMapper seckillVoucherMapper, TransactionTemplate transactionTemplate,
+                                 MeterRegistry registry,
+                                 @Value("${hmdp.order.timeout.pay-timeout-ms:900000}") long payTimeoutMillis,
+                                 @Value("${hmdp.order.timeout.tick-ms:1000}") long tickMillis,
+                                 @Value("${hmdp.order.timeout.wheel-size:60}") int wheelSize,
+                                 @Value("${hmdp.order.timeout.batch-size:200}") int batchSize,
+                                 @Value("${hmdp.order.timeout.reload-interval-ms:60000}") long reloadIntervalMillis,
+                                 @Value("${hmdp.order.timeout.retry-delay-ms:5000}") long retryDelayMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.voucherOrderMapper = voucherOrderMapper;
+        this.seckillVoucherMapper = seckillVoucherMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.payTimeoutMillis = payTimeoutMillis;
+        this.batchSize = batchSize;
+        this.reloadIntervalMillis = reloadIntervalMillis;
+        this.retryDelayMillis = retryDelayMillis;
+        this.tickMillis = tickMillis;
+        this.wheel = new TimingWheel(tickMillis, wheelSize, System.currentTimeMillis());
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "order-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("order.timeout.pending", this, OrderTimeoutCanceller::wheelSize).register(registry);
+        FunctionCounter.builder("order.timeout.cancelled", this, OrderTimeoutCanceller::cancelledCount).register(registry);
+    }
+
+    /**
+     * 构造完成后再开始推进时间轮
+     */
+    @PostConstruct
+    public void start() {
+        ticker.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录订单的支付截止时间，在订单写入数据库之前调用
+     * 截止时间由下单时间计算，重复调用结果相同；订单最终没有写入时，到期后查不到未支付的订单，直接忽略
+     */
+    public void schedule(Collection<VoucherOrder> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> deadlines = new LinkedHashMap<>();
+        for (VoucherOrder order : orders) {
+            deadlines.put(order.getId(), deadlineOf(order.getCreateTime()));
+        }
+        add(deadlines);
+        scheduled.add(deadlines.size());
+    }
+
+    private long deadlineOf(LocalDateTime createTime) {
+        long created = createTime == null ? System.currentTimeMillis()
+                : createTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return created + payTimeoutMillis;
+    }
+
+    /**
+     * 写入ZSET后放入时间轮
+     */
+    private void add(Map<Long, Long> deadlines) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            deadlines.forEach((id, deadline) -> connection.zAdd(RAW_KEY, deadline, rawId(id)));
+            return null;
+        });
+        synchronized (wheel) {
+            deadlines.forEach(wheel::add);
+        }
+    }
+
+    private void tick() {
+        try {
+            List<Long> expired;
+            synchronized (wheel) {
+                expired = wheel.advance(System.currentTimeMillis());
+            }
+            for (int from = 0; from < expired.size(); from += batchSize) {
+                cancel(expired.subList(from, Math.min(from + batchSize, expired.size())));
+            }
+        } catch (Exception e) {
+            // 不能抛出异常，否则定时任务会停止
+            log.error("取消超时订单失败", e);
+        }
+    }
+
+    /**
+     * 把即将到期（包括已经过期）的订单从ZSET放回时间轮：重启前记录的订单、宕机节点上的订单
+     */
+    @Scheduled(initialDelayString = "${hmdp.order.timeout.tick-ms:1000}",
+            fixedDelayString = "${hmdp.order.timeout.reload-interval-ms:60000}")
+    public void reload() {
+        try {
+            long max = System.currentTimeMillis() + reloadIntervalMillis * 2;
+            Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(ORDER_TIMEOUT_KEY, 0, max, 0, MAX_RELOAD);
+            if (tuples == null || tuples.isEmpty()) {
+                return;
+            }
+            int added = 0;
+            synchronized (wheel) {
+                for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                    if (tuple.getValue() != null && tuple.getScore() != null
+                            && wheel.add(Long.parseLong(tuple.getValue()), tuple.getScore().longValue())) {
+                        added++;
+                    }
+                }
+            }
+            if (added > 0) {
+                log.info("从redis重新加载了{}个待支付订单的截止时间", added);
+            }
+        } catch (Exception e) {
+            log.error("重新加载订单支付截止时间失败", e);
+        }
+    }
+
+    private void cancel(List<Long> ids) {
+        // 1.认领：把分数改为 now + retry-delay-ms 作为租约，本节点在租约内处理；宕机时租约到期后由重新加载接手
+        long now = System.currentTimeMillis();
+        long leaseUntil = now + retryDelayMillis;
+        List<String> args = new ArrayList<>(ids.size() + 2);
+        args.add(String.valueOf(now));
+        args.add(String.valueOf(leaseUntil));
+        ids.forEach(id -> args.add(id.toString()));
+        List<String> result = stringRedisTemplate.execute(CLAIM_SCRIPT,
+                Collections.singletonList(ORDER_TIMEOUT_KEY), args.toArray());
+        if (result == null || result.isEmpty()) {
+            return;
+        }
+        List<Long> claimed = result.stream().map(Long::valueOf).collect(Collectors.toList());
+        // 2.在一个事务中取消仍未支付的订单，并归还数据库库存
+        List<VoucherOrder> orders;
+        try {
+            orders = transactionTemplate.execute(status -> cancelUnpaid(claimed));
+        } catch (Exception e) {
+            // ZSET中的分数已经是租约到期时间，只需放回本地时间轮，届时重新认领
+            retries.increment();
+            log.warn("取消超时订单失败，{}ms后重试，数量：{}", retryDelayMillis, claimed.size(), e);
+            synchronized (wheel) {
+                claimed.forEach(id -> wheel.add(id, leaseUntil));
+            }
+            return;
+        }
+        if (orders == null) {
+            orders = new ArrayList<>();
+        }
+        cancelled.add(orders.size());
+        // 已支付、不存在（重复下单或写入失败）的订单
+        skipped.add(claimed.size() - orders.size());
+        // 3.事务提交后归还redis中的库存和下单资格，失败时redis库存偏少，只会少卖不会超卖
+        orders.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId,
+                        Collectors.mapping(order -> order.getUserId().toString(), Collectors.toList())))
+                .forEach(this::restore);
+        // 4.全部处理完成后再从ZSET中移除；在此之前宕机，租约到期后重新处理，已取消的订单不会重复归还
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long id : claimed) {
+                connection.zRem(RAW_KEY, rawId(id));
+            }
+            return null;
+        });
+    }
+
+    private List<VoucherOrder> cancelUnpaid(List<Long> ids) {
+        List<VoucherOrder> unpaid = voucherOrderMapper.selectUnpaidForUpdate(ids);
+        if (unpaid.isEmpty()) {
+            return unpaid;
+        }
+        voucherOrderMapper.cancelUnpaid(unpaid.stream().map(VoucherOrder::getId).collect(Collectors.toList()));
+        unpaid.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, Collectors.counting()))
+                .forEach((voucherId, count) -> seckillVoucherMapper.increaseStock(voucherId, count.intValue()));
+        return unpaid;
+    }
+
+    private void restore(Long voucherId, List<String> userIds) {
+        try {
+            stringRedisTemplate.execute(CANCEL_SCRIPT,
+                    Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId),
+                    userIds.toArray());
+        } catch (Exception e) {
+            restoreFailed.add(userIds.size());
+            log.error("归还秒杀券{}的redis库存失败，数量：{}", voucherId, userIds.size(), e);
+        }
+    }
+
+    private static byte[] rawId(Long id) {
+        return id.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public int wheelSize() {
+        synchronized (wheel) {
+            return wheel.size();
+        }
+    }
+
+    public long cancelledCount() {
+        return cancelled.sum();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        int size;
+        synchronized (wheel) {
+            size = wheel.size();
+        }
+        map.put("wheelSize", size);
+        map.put("scheduled", scheduled.sum());
+        map.put("cancelled", cancelled.sum());
+        map.put("skipped", skipped.sum());
+        map.put("retries", retries.sum());
+        map.put("restoreFailed", restoreFailed.sum());
+        return map;
+    }
+
+    /**
+     * 随Spring容器关闭：停止时间轮，未到期的订单留在ZSET中，由其它节点或重启后重新加载
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        ticker.shutdown();
+        ticker.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
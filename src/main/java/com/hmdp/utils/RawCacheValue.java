@@ -0,0 +1,33 @@
+package com.hmdp.utils;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+
+/**
+ * 带头部的缓存值的视图：只解析头部，数据部分不做拷贝
+ */
+@Getter
+public class RawCacheValue {
+    private final byte[] bytes;
+    private final int offset;
+    private final LocalDateTime expireTime;
+    private final Long rebuildCost;
+
+    public RawCacheValue(byte[] bytes, int offset, LocalDateTime expireTime, Long rebuildCost) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.expireTime = expireTime;
+        this.rebuildCost = rebuildCost;
+    }
+
+    public int length() {
+        return bytes.length - offset;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, offset, bytes.length - offset);
+    }
+}
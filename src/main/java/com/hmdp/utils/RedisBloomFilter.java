@@ -0,0 +1,208 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_FILTER_CHANNEL;
+import static com.hmdp.utils.RedisConstants.BLOOM_FILTER_KEY;
+
+/**
+ * 布隆过滤器，用来在访问缓存和数据库之前拦截一定不存在的id，解决缓存穿透问题
+ * 本地保存一份位数组用于判断，同时以Redis bitmap的形式保存一份，供各节点共享
+ */
+@Slf4j
+public class RedisBloomFilter {
+
+    private static final DefaultRedisScript<Long> ADD_SCRIPT;
+
+    static {
+        ADD_SCRIPT = new DefaultRedisScript<>();
+        ADD_SCRIPT.setLocation(new ClassPathResource("bloom_add.lua"));
+        ADD_SCRIPT.setResultType(Long.class);
+    }
+
+    private final String name;
+    private final byte[] redisKey;
+    private final StringRedisTemplate stringRedisTemplate;
+    /**
+     * 位数组的长度，总是64的整数倍
+     */
+    private final long numBits;
+    /**
+     * 哈希函数的个数
+     */
+    private final int numHashes;
+
+    private volatile AtomicLongArray bits;
+    /**
+     * 位数组加载完成之前不做拦截，避免误判正常的id
+     */
+    private volatile boolean ready;
+
+    public RedisBloomFilter(String name, StringRedisTemplate stringRedisTemplate, long expectedInsertions, double fpp) {
+        this.name = name;
+        this.redisKey = (BLOOM_FILTER_KEY + name).getBytes(StandardCharsets.UTF_8);
+        this.stringRedisTemplate = stringRedisTemplate;
+        // m = -n * ln(p) / (ln2)^2，k = m / n * ln2
+        long m = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.numBits = (m + 63) / 64 * 64;
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+        this.bits = new AtomicLongArray((int) (numBits / 64));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 判断id是否可能存在，返回false时id一定不存在
+     *
+     * @param id
+     * @return
+     */
+    public boolean mightContain(Object id) {
+        if (!ready) {
+            return true;
+        }
+        AtomicLongArray current = bits;
+        for (long offset : offsets(id)) {
+            if ((current.get((int) (offset >>> 6)) & (1L << offset)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 新增id：写入本地位数组和Redis bitmap，并通知其它节点
+     * Redis bitmap只由rebuild整体写入；bitmap不存在时不写，避免留下一份不完整的位数组被其它节点当作完整的加载
+     *
+     * @param id
+     */
+    public void put(Object id) {
+        long[] offsets = offsets(id);
+        setLocal(offsets);
+        Object[] args = new Object[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            args[i] = String.valueOf(offsets[i]);
+        }
+        Long written = stringRedisTemplate.execute(ADD_SCRIPT,
+                Collections.singletonList(new String(redisKey, StandardCharsets.UTF_8)), args);
+        if (written == null || written == 0) {
+            log.warn("布隆过滤器[{}]的Redis bitmap不存在，id：{}只写入本地，等待下一次重建", name, id);
+        }
+        stringRedisTemplate.convertAndSend(BLOOM_FILTER_CHANNEL, name + ":" + id);
+    }
+
+    /**
+     * 处理其它节点的新增通知，只写本地位数组
+     *
+     * @param id
+     */
+    public void putLocal(String id) {
+        setLocal(offsets(id));
+    }
+
+    /**
+     * 根据全量id重建过滤器，用于清理已经删除的id
+     *
+     * @param ids
+     */
+    public void rebuild(Iterable<?> ids) {
+        AtomicLongArray rebuilt = new AtomicLongArray((int) (numBits / 64));
+        long count = 0;
+        for (Object id : ids) {
+            for (long offset : offsets(id)) {
+                int index = (int) (offset >>> 6);
+                rebuilt.set(index, rebuilt.get(index) | (1L << offset));
+            }
+            count++;
+        }
+        byte[] bytes = toRedisBytes(rebuilt);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.set(redisKey, bytes));
+        bits = rebuilt;
+        ready = true;
+        // 通知其它节点从Redis重新加载
+        stringRedisTemplate.convertAndSend(BLOOM_FILTER_CHANNEL, name + ":");
+        log.info("布隆过滤器[{}]重建完成，共{}个id", name, count);
+    }
+
+    /**
+     * 从Redis bitmap加载位数组
+     *
+     * @return Redis中不存在或者长度不一致时返回false
+     */
+    public boolean loadFromRedis() {
+        byte[] bytes = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(redisKey));
+        if (bytes == null || bytes.length != numBits / 8) {
+            return false;
+        }
+        bits = fromRedisBytes(bytes);
+        ready = true;
+        return true;
+    }
+
+    private void setLocal(long[] offsets) {
+        AtomicLongArray current = bits;
+        for (long offset : offsets) {
+            int index = (int) (offset >>> 6);
+            long mask = 1L << offset;
+            long word;
+            do {
+                word = current.get(index);
+            } while ((word & mask) == 0 && !current.compareAndSet(index, word, word | mask));
+        }
+    }
+
+    /**
+     * 双重哈希计算k个位下标：g(i) = h1 + i * h2
+     */
+    private long[] offsets(Object id) {
+        long[] hash = MurmurHash.hash128(String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+        long[] offsets = new long[numHashes];
+        long combined = hash[0];
+        for (int i = 0; i < numHashes; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % numBits;
+            combined += hash[1];
+        }
+        return offsets;
+    }
+
+    /**
+     * Redis bitmap中第n位位于第n/8个字节的高位，本地则是第n/64个long的低位，转换时需要翻转字节内的位序
+     */
+    private static byte[] toRedisBytes(AtomicLongArray words) {
+        byte[] bytes = new byte[words.length() * 8];
+        for (int i = 0; i < words.length(); i++) {
+            long word = words.get(i);
+            for (int j = 0; j < 8; j++) {
+                bytes[i * 8 + j] = (byte) (Integer.reverse((int) (word >>> (j * 8)) & 0xFF) >>> 24);
+            }
+        }
+        return bytes;
+    }
+
+    private static AtomicLongArray fromRedisBytes(byte[] bytes) {
+        AtomicLongArray words = new AtomicLongArray(bytes.length / 8);
+        for (int i = 0; i < words.length(); i++) {
+            long word = 0;
+            for (int j = 0; j < 8; j++) {
+                word |= (long) (Integer.reverse(bytes[i * 8 + j] & 0xFF) >>> 24) << (j * 8);
+            }
+            words.set(i, word);
+        }
+        return words;
+    }
+}
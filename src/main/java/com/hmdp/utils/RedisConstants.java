@@ -11,11 +11,38 @@ public class RedisConstants {
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
 
+    public static final Long CACHE_SHOP_VOUCHER_TTL = 30L;
+    public static final String CACHE_SHOP_VOUCHER_KEY = "cache:voucher:shop:";
+
+    public static final Long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final String LOCK_CACHE_REBUILD_KEY = "lock:";
+
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String CACHE_SHOP_TYPE_CHANNEL = "cache:shop-type:refresh";
+
+    public static final String BLOOM_FILTER_KEY = "bloom:";
+    public static final String BLOOM_FILTER_CHANNEL = "bloom:add";
+    public static final String LOCK_BLOOM_KEY = "lock:bloom:";
+
+    public static final String LOCK_WARM_UP_KEY = "lock:warm-up";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_META_KEY = "seckill:meta:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    public static final String ORDER_TIMEOUT_KEY = "order:timeout";
+    public static final String ID_KEY = "icr:";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String BLOG_LIKED_DELTA_KEY = "blog:liked-delta";
+    public static final String BLOG_LIKED_FLUSHING_KEY = "blog:liked-delta:flushing";
+    public static final String LOCK_BLOG_LIKED_FLUSH_KEY = "lock:blog:liked:flush";
+    public static final String BLOG_HOT_KEY = "blog:hot";
+    public static final String BLOG_HOT_STAT_KEY = "blog:hot:stat";
+    public static final String LOCK_BLOG_HOT_KEY = "lock:blog:hot";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
     public static final String USER_SIGN_KEY = "sign:";
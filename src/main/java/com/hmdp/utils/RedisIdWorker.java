@@ -0,0 +1,231 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.ID_KEY;
+
+/**
+ * 全局唯一id：符号位(1) | 时间戳，从BEGIN_TIMESTAMP开始的秒数(31) | 当天的序列号(32)
+ * <p>
+ * 序列号由redis按业务和日期（UTC）自增，每个节点一次通过INCRBY租用一段序列号，在本地无锁分配；
+ * 当前号段剩余不足一定比例时异步预取下一段，号段用完时直接切换，redis不会成为下单的瓶颈。
+ * 同一天内序列号全局唯一，因此时钟回拨不会产生重复id；回拨时沿用上一次的时间戳保证id递增，
+ * 回拨超过允许范围时拒绝生成id
+ */
+@Slf4j
+@Component
+public class RedisIdWorker {
+
+    /**
+     * 开始时间戳：2022-01-01 00:00:00 UTC
+     */
+    private static final long BEGIN_TIMESTAMP = 1640995200L;
+
+    /**
+     * 序列号的位数
+     */
+    private static final int COUNT_BITS = 32;
+
+    private static final long SECONDS_PER_DAY = 86400L;
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final int segmentSize;
+    private final int prefetchThreshold;
+    private final long maxBackwardSeconds;
+
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "id-segment-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 已使用的最大时间戳（秒），用于发现时钟回拨
+     */
+    private final AtomicLong lastSecond = new AtomicLong();
+
+    private final LongAdder leased = new LongAdder();
+    private final LongAdder prefetched = new LongAdder();
+    private final LongAdder clockBackwards = new LongAdder();
+
+    public RedisIdWorker(StringRedisTemplate stringRedisTemplate,
+                         @Value("${hmdp.id.segment-size:1000}") int segmentSize,
+                         @Value("${hmdp.id.prefetch-ratio:0.5}") double prefetchRatio,
+                         @Value("${hmdp.id.max-backward-ms:5000}") long maxBackwardMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.segmentSize = segmentSize;
+        this.prefetchThreshold = (int) Math.max(1, segmentSize * prefetchRatio);
+        this.maxBackwardSeconds = Math.max(1, maxBackwardMillis / 1000);
+    }
+
+    public long nextId(String keyPrefix) {
+        // 1.生成时间戳
+        long second = currentSecond();
+        long timestamp = second - BEGIN_TIMESTAMP;
+        // 2.从号段中取序列号，号段与日期绑定，跨天后切换到新日期的号段
+        long day = second / SECONDS_PER_DAY;
+        SegmentBuffer buffer = buffers.computeIfAbsent(keyPrefix, SegmentBuffer::new);
+        long count = buffer.next(day);
+        // 3.拼接
+        return timestamp << COUNT_BITS | count;
+    }
+
+    /**
+     * 当前时间（秒），时钟回拨时返回上一次使用的时间
+     */
+    private long currentSecond() {
+        long now = System.currentTimeMillis() / 1000;
+        while (true) {
+            long last = lastSecond.get();
+            if (now >= last) {
+                if (now == last || lastSecond.compareAndSet(last, now)) {
+                    return now;
+                }
+                continue;
+            }
+            clockBackwards.increment();
+            if (last - now > maxBackwardSeconds) {
+                throw new IllegalStateException("时钟回拨" + (last - now) + "秒，拒绝生成id");
+            }
+            return last;
+        }
+    }
+
+    /**
+     * 从redis租用一段序列号
+     *
+     * @param key  计数器key
+     * @param step 号段长度
+     * @return 号段的最大值，号段为(max - step, max]
+     */
+    protected long lease(String key, long step) {
+        Long max = stringRedisTemplate.opsForValue().increment(key, step);
+        if (max == null) {
+            throw new IllegalStateException("租用号段失败：" + key);
+        }
+        return max;
+    }
+
+    /**
+     * 一个号段：[next, max]
+     */
+    private static class Segment {
+        private final long day;
+        private final long max;
+        private final AtomicLong next;
+
+        Segment(long day, long max, long step) {
+            this.day = day;
+            this.max = max;
+            this.next = new AtomicLong(max - step + 1);
+        }
+    }
+
+    /**
+     * 一个业务的双号段：当前号段和预取的下一段
+     */
+    private class SegmentBuffer {
+        private final String keyPrefix;
+        private volatile Segment current;
+        private volatile Segment next;
+        private final AtomicBoolean prefetching = new AtomicBoolean();
+
+        SegmentBuffer(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        long next(long day) {
+            while (true) {
+                Segment segment = current;
+                if (segment != null && segment.day == day) {
+                    long value = segment.next.getAndIncrement();
+                    if (value <= segment.max) {
+                        if (segment.max - value == prefetchThreshold) {
+                            prefetchAsync(segment);
+                        }
+                        return value;
+                    }
+                }
+                switchSegment(segment, day);
+            }
+        }
+
+        /**
+         * 当前号段用完或日期变化时切换号段，只有一个线程访问redis
+         */
+        private synchronized void switchSegment(Segment exhausted, long day) {
+            if (current != exhausted) {
+                // 其它线程已经切换
+                return;
+            }
+            Segment prepared = next;
+            next = null;
+            current = prepared != null && prepared.day == day ? prepared : load(day);
+        }
+
+        private void prefetchAsync(Segment segment) {
+            if (!prefetching.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                prefetchExecutor.execute(() -> {
+                    try {
+                        Segment loaded = load(segment.day);
+                        synchronized (this) {
+                            if (current == segment && next == null) {
+                                next = loaded;
+                                prefetched.increment();
+                            }
+                        }
+                    } catch (Exception e) {
+                        // 预取失败不影响当前号段，用完时同步租用
+                        log.warn("预取id号段失败，业务：{}", keyPrefix, e);
+                    } finally {
+                        prefetching.set(false);
+                    }
+                });
+            } catch (Exception e) {
+                prefetching.set(false);
+            }
+        }
+
+        private Segment load(long day) {
+            String date = LocalDate.ofEpochDay(day).format(DATE_FORMATTER);
+            long max = lease(ID_KEY + keyPrefix + ":" + date, segmentSize);
+            leased.increment();
+            return new Segment(day, max, segmentSize);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("segmentSize", segmentSize);
+        map.put("leased", leased.sum());
+        map.put("prefetched", prefetched.sum());
+        map.put("clockBackwards", clockBackwards.sum());
+        return map;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+}
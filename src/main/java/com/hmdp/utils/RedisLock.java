@@ -0,0 +1,361 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.BooleanUtil;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于redis的分布式锁
+ * <ul>
+ *     <li>每次加锁写入唯一的令牌，释放和续期都通过lua脚本比较令牌，不会误删其它节点的锁</li>
+ *     <li>持有期间由看门狗每隔1/3租期续期一次，执行时间超过租期也不会丢锁；节点宕机后锁在租期内自动过期</li>
+ *     <li>同一线程可以重入，释放次数与加锁次数相同时才真正释放</li>
+ *     <li>本节点已持有的锁直接在本地拒绝；同一个key同时只有一个线程到redis中竞争，其它线程不访问redis，
+ *     不同的key互不影响</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class RedisLock {
+
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+
+    static {
+        UNLOCK_SCRIPT = new DefaultRedisScript<>();
+        UNLOCK_SCRIPT.setLocation(new ClassPathResource("lock_unlock.lua"));
+        UNLOCK_SCRIPT.setResultType(Long.class);
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("lock_renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long leaseMillis;
+    private final long retryIntervalMillis;
+
+    /**
+     * 正在到redis中竞争的key，只在一次加锁请求期间占用，等待重试期间不占用
+     */
+    private final Set<String> acquiring = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 本节点持有的锁
+     */
+    private final Map<String, Lease> held = new ConcurrentHashMap<>();
+
+    /**
+     * 令牌为 节点id:序号，节点id每次启动随机生成
+     */
+    private final String nodeId = UUID.fastUUID().toString(true);
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final ScheduledExecutorService watchdog;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder reentered = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder localRejected = new LongAdder();
+    private final LongAdder renewed = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+
+    public RedisLock(StringRedisTemplate stringRedisTemplate, MeterRegistry registry,
+                     @Value("${hmdp.lock.lease-ms:10000}") long leaseMillis,
+                     @Value("${hmdp.lock.retry-interval-ms:50}") long retryIntervalMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.leaseMillis = leaseMillis;
+        this.retryIntervalMillis = retryIntervalMillis;
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-lock-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("redis.lock.held", this, RedisLock::heldCount).register(registry);
+        FunctionCounter.builder("redis.lock.contended", this, RedisLock::contendedCount).register(registry);
+        FunctionCounter.builder("redis.lock.local.rejected", this, RedisLock::localRejectedCount).register(registry);
+        FunctionCounter.builder("redis.lock.lost", this, RedisLock::lostCount).register(registry);
+    }
+
+    /**
+     * 尝试获取锁，不等待
+     *
+     * @param key 锁的key
+     * @return 获取成功返回租约，用完后调用unlock；失败返回null
+     */
+    public Lease tryLock(String key) {
+        Lease lease = reenter(key);
+        if (lease != null) {
+            return lease;
+        }
+        return tryAcquire(key);
+    }
+
+    /**
+     * 尝试获取锁，最多等待waitTime；等待期间按retry-interval-ms重试，同一个key每次只有一个线程访问redis
+     *
+     * @param key      锁的key
+     * @param waitTime 最长等待时间
+     * @param unit     时间单位
+     * @return 获取成功返回租约，用完后调用unlock；超时返回null
+     */
+    public Lease tryLock(String key, long waitTime, TimeUnit unit) throws InterruptedException {
+        Lease lease = reenter(key);
+        if (lease != null) {
+            return lease;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(waitTime);
+        while (true) {
+            lease = tryAcquire(key);
+            if (lease != null) {
+                return lease;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            // 休眠期间不占用key，其它线程可以继续竞争
+            TimeUnit.NANOSECONDS.sleep(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(retryIntervalMillis)));
+        }
+    }
+
+    private Lease reenter(String key) {
+        Lease lease = held.get(key);
+        if (lease != null && lease.owner == Thread.currentThread() && lease.enter()) {
+            reentered.increment();
+            return lease;
+        }
+        return null;
+    }
+
+    /**
+     * 本节点没有线程持有或正在竞争该key时，到redis中加锁一次
+     */
+    private Lease tryAcquire(String key) {
+        if (held.containsKey(key) || !acquiring.add(key)) {
+            // 本节点其它线程持有该锁或正在竞争，不需要访问redis
+            localRejected.increment();
+            return null;
+        }
+        try {
+            return acquire(key);
+        } finally {
+            acquiring.remove(key);
+        }
+    }
+
+    /**
+     * 在redis中加锁，调用方已占用acquiring中的key
+     */
+    private Lease acquire(String key) {
+        if (held.containsKey(key)) {
+            localRejected.increment();
+            return null;
+        }
+        String token = nodeId + ":" + sequence.incrementAndGet();
+        if (!setIfAbsent(key, token)) {
+            contended.increment();
+            return null;
+        }
+        Lease lease = new Lease(key, token);
+        long period = Math.max(leaseMillis / 3, 1);
+        lease.renewal = watchdog.scheduleAtFixedRate(() -> renew(lease), period, period, TimeUnit.MILLISECONDS);
+        held.put(key, lease);
+        acquired.increment();
+        return lease;
+    }
+
+    /**
+     * 不存在时写入令牌并设置租期
+     */
+    protected boolean setIfAbsent(String key, String token) {
+        return BooleanUtil.isTrue(
+                stringRedisTemplate.opsForValue().setIfAbsent(key, token, leaseMillis, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 令牌一致时重置租期
+     *
+     * @return 锁是否仍由自己持有
+     */
+    protected boolean renewIfOwned(String key, String token) {
+        Long result = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(key),
+                token, String.valueOf(leaseMillis));
+        return result != null && result == 1;
+    }
+
+    /**
+     * 令牌一致时删除
+     *
+     * @return 是否删除
+     */
+    protected boolean deleteIfOwned(String key, String token) {
+        Long result = stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(key), token);
+        return result != null && result == 1;
+    }
+
+    private void renew(Lease lease) {
+        try {
+            if (renewIfOwned(lease.key, lease.token)) {
+                renewed.increment();
+                return;
+            }
+            // 锁已经过期，可能已被其它节点获取，不再续期
+            lease.lost = true;
+            lost.increment();
+            lease.renewal.cancel(false);
+            held.remove(lease.key, lease);
+            log.warn("分布式锁已丢失：{}", lease.key);
+        } catch (Exception e) {
+            // redis暂时不可用，下个周期重试，租期内恢复即可
+            log.warn("分布式锁续期失败：{}", lease.key, e);
+        }
+    }
+
+    private void release(Lease lease) {
+        lease.renewal.cancel(false);
+        try {
+            if (lease.lost) {
+                return;
+            }
+            if (!deleteIfOwned(lease.key, lease.token)) {
+                lost.increment();
+                log.warn("释放分布式锁时锁已过期：{}", lease.key);
+            }
+        } finally {
+            held.remove(lease.key, lease);
+        }
+    }
+
+    public int heldCount() {
+        return held.size();
+    }
+
+    public long contendedCount() {
+        return contended.sum();
+    }
+
+    public long localRejectedCount() {
+        return localRejected.sum();
+    }
+
+    public long lostCount() {
+        return lost.sum();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("held", held.size());
+        map.put("acquired", acquired.sum());
+        map.put("reentered", reentered.sum());
+        map.put("contended", contended.sum());
+        map.put("localRejected", localRejected.sum());
+        map.put("renewed", renewed.sum());
+        map.put("lost", lost.sum());
+        return map;
+    }
+
+    /**
+     * 随Spring容器关闭：停止续期并释放本节点持有的锁，其它节点不必等待租期结束
+     */
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+        for (Lease lease : new ArrayList<>(held.values())) {
+            try {
+                release(lease);
+            } catch (Exception e) {
+                log.warn("关闭时释放分布式锁失败：{}", lease.key, e);
+            }
+        }
+    }
+
+    /**
+     * 一次加锁得到的租约
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final String key;
+        private final String token;
+
+        /**
+         * 可以重入的线程，交给其它线程释放后为null
+         */
+        private volatile Thread owner = Thread.currentThread();
+        private int holds = 1;
+        private volatile boolean lost;
+        private volatile ScheduledFuture<?> renewal;
+
+        private Lease(String key, String token) {
+            this.key = key;
+            this.token = token;
+        }
+
+        private synchronized boolean enter() {
+            if (holds == 0) {
+                return false;
+            }
+            holds++;
+            return true;
+        }
+
+        /**
+         * 释放一次，释放次数与加锁次数相同时删除redis中的锁；可以在其它线程调用
+         */
+        public void unlock() {
+            synchronized (this) {
+                if (holds == 0) {
+                    throw new IllegalStateException("锁已经释放：" + key);
+                }
+                if (--holds > 0) {
+                    return;
+                }
+            }
+            release(this);
+        }
+
+        /**
+         * 锁交给其它线程释放时调用，当前线程之后不能再重入
+         */
+        public void detach() {
+            owner = null;
+        }
+
+        /**
+         * 锁是否仍由自己持有；看门狗续期时发现锁已被其它节点获取则返回false
+         */
+        public synchronized boolean isHeld() {
+            return !lost && holds > 0;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public void close() {
+            unlock();
+        }
+    }
+}
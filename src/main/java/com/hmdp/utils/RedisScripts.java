@@ -0,0 +1,26 @@
+package com.hmdp.utils;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.List;
+
+/**
+ * 加载classpath下的lua脚本
+ */
+public final class RedisScripts {
+
+    private RedisScripts() {
+    }
+
+    /**
+     * 返回多个值的脚本，redis的整数转为Long，字符串转为String
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> DefaultRedisScript<List<T>> listScript(String location) {
+        DefaultRedisScript<List<T>> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(location));
+        script.setResultType((Class<List<T>>) (Class<?>) List.class);
+        return script;
+    }
+}
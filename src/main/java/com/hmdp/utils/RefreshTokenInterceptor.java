@@ -18,9 +18,11 @@ import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
 @Slf4j
 public class RefreshTokenInterceptor implements HandlerInterceptor {
     private StringRedisTemplate stringRedisTemplate;
+    private CacheMetrics cacheMetrics;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
+    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate, CacheMetrics cacheMetrics) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheMetrics = cacheMetrics;
     }
 
     @Override
@@ -36,8 +38,10 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
 
         // 3.判断用户是否存在
         if (userMap.isEmpty()) {
+            cacheMetrics.recordGet(LOGIN_USER_KEY, null, CacheMetrics.MISS);
             return true;
         }
+        cacheMetrics.recordGet(LOGIN_USER_KEY, null, CacheMetrics.HIT);
         // 5.将查询到的hashMap数据转为UserDTO对象
         UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
         // 6.存在保存用户信息到ThreadLocal
@@ -0,0 +1,63 @@
+package com.hmdp.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.Result;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 把已经是JSON的数据包装成Result写入响应，输出与Spring MVC序列化Result.ok(data)的结果一致
+ * Result的前后两段在启动时用同一个ObjectMapper生成，之后每次只需要拼接字节
+ */
+@Component
+public class ResultBodyWriter {
+
+    private static final String PLACEHOLDER = "__data__";
+
+    private final byte[] prefix;
+    private final byte[] suffix;
+
+    public ResultBodyWriter(ObjectMapper objectMapper) throws JsonProcessingException {
+        byte[] template = objectMapper.writeValueAsBytes(Result.ok(PLACEHOLDER));
+        byte[] placeholder = ("\"" + PLACEHOLDER + "\"").getBytes(StandardCharsets.UTF_8);
+        int index = indexOf(template, placeholder);
+        if (index < 0) {
+            throw new IllegalStateException("无法生成Result模板：" + new String(template, StandardCharsets.UTF_8));
+        }
+        this.prefix = Arrays.copyOfRange(template, 0, index);
+        this.suffix = Arrays.copyOfRange(template, index + placeholder.length, template.length);
+    }
+
+    public void write(HttpServletResponse response, RawCacheValue data) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentLength(prefix.length + data.length() + suffix.length);
+        write(response.getOutputStream(), data);
+    }
+
+    public void write(OutputStream out, RawCacheValue data) throws IOException {
+        out.write(prefix);
+        data.writeTo(out);
+        out.write(suffix);
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target) {
+        outer:
+        for (int i = 0; i <= bytes.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (bytes[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,287 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.entity.SeckillVoucher;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_META_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * 秒杀准入
+ * <ul>
+ *     <li>预热：秒杀券创建后写入SECKILL_STOCK_KEY和SECKILL_META_KEY（begin、end两个字段的hash），
+ *     两个key在结束时间之后retention-ms过期</li>
+ *     <li>本地判断：每个节点在内存中保存各秒杀券的开始和结束时间，时间窗口之外以及刚刚售罄的请求直接拒绝，不访问redis；
+ *     布隆过滤器判断一定不存在的秒杀券同样直接拒绝；
+ *     本节点没有的秒杀券在第一次请求时从redis读取；redis中也没有的秒杀券只在有界的本地缓存中记录unknown-ttl-ms，
+ *     期间交给lua脚本判断</li>
+ *     <li>定时任务：秒杀结束时给已下单用户集合设置过期时间，retention-ms之后清理本地记录</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class SeckillGate {
+
+    /**
+     * 以下返回值与seckill.lua一致
+     */
+    public static final int OK = 0;
+    public static final int SOLD_OUT = 1;
+    public static final int NOT_STARTED = 3;
+    public static final int ENDED = 4;
+    public static final int NOT_EXIST = 5;
+
+    private static final List<Object> META_FIELDS = Arrays.asList("begin", "end");
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisBloomFilter voucherBloomFilter;
+    private final long retentionMillis;
+    private final long soldOutRecheckMillis;
+
+    private final Map<Long, Window> windows = new ConcurrentHashMap<>();
+
+    /**
+     * redis中没有秒杀时间的秒杀券，过期后重新读取
+     */
+    private final Cache<Long, Boolean> unknown;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "seckill-gate");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder localRejected = new LongAdder();
+    private final LongAdder loaded = new LongAdder();
+
+    public SeckillGate(StringRedisTemplate stringRedisTemplate,
+                       @Qualifier("voucherBloomFilter") RedisBloomFilter voucherBloomFilter, MeterRegistry registry,
+                       @Value("${hmdp.seckill.retention-ms:86400000}") long retentionMillis,
+                       @Value("${hmdp.seckill.sold-out-recheck-ms:1000}") long soldOutRecheckMillis,
+                       @Value("${hmdp.seckill.unknown-ttl-ms:1000}") long unknownTtlMillis,
+                       @Value("${hmdp.seckill.unknown-max-size:10000}") long unknownMaxSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.voucherBloomFilter = voucherBloomFilter;
+        this.retentionMillis = retentionMillis;
+        this.soldOutRecheckMillis = soldOutRecheckMillis;
+        this.unknown = Caffeine.newBuilder()
+                .maximumSize(unknownMaxSize)
+                .expireAfterWrite(unknownTtlMillis, TimeUnit.MILLISECONDS)
+                .build();
+        FunctionCounter.builder("seckill.gate.rejected", this, SeckillGate::localRejectedCount).register(registry);
+    }
+
+    /**
+     * 一个秒杀券的时间窗口，begin和end为毫秒时间戳
+     */
+    private static class Window {
+        private final long begin;
+        private final long end;
+        private volatile long soldOutUntil;
+
+        Window(long begin, long end) {
+            this.begin = begin;
+            this.end = end;
+        }
+    }
+
+    /**
+     * 在本地判断能否进入秒杀
+     *
+     * @param voucherId 秒杀券id
+     * @return OK表示需要继续由redis判断，其它值为拒绝的原因
+     */
+    public int check(Long voucherId) {
+        long now = System.currentTimeMillis();
+        Window window = windows.get(voucherId);
+        if (window == null) {
+            if (!voucherBloomFilter.mightContain(voucherId)) {
+                // 一定不存在的秒杀券，不访问redis
+                localRejected.increment();
+                return NOT_EXIST;
+            }
+            if (unknown.getIfPresent(voucherId) != null) {
+                // redis中没有秒杀时间，交给lua脚本判断
+                return OK;
+            }
+            // 在map之外读取redis，不阻塞同一个桶中其它秒杀券的读写；并发读取时以先放入的为准
+            window = load(voucherId);
+            if (window == null) {
+                return OK;
+            }
+            Window existing = windows.putIfAbsent(voucherId, window);
+            if (existing == null) {
+                scheduleClose(voucherId, window.end);
+            } else {
+                window = existing;
+            }
+        }
+        int result = OK;
+        if (now < window.begin) {
+            result = NOT_STARTED;
+        } else if (now > window.end) {
+            result = ENDED;
+        } else if (now < window.soldOutUntil) {
+            result = SOLD_OUT;
+        }
+        if (result != OK) {
+            localRejected.increment();
+        }
+        return result;
+    }
+
+    /**
+     * 从redis读取秒杀时间
+     *
+     * @return redis中没有秒杀时间时返回null，并记录到unknown中
+     */
+    private Window load(Long voucherId) {
+        loaded.increment();
+        List<Object> meta = stringRedisTemplate.opsForHash().multiGet(SECKILL_META_KEY + voucherId, META_FIELDS);
+        if (meta == null || meta.get(0) == null || meta.get(1) == null) {
+            unknown.put(voucherId, Boolean.TRUE);
+            return null;
+        }
+        long begin = Long.parseLong(meta.get(0).toString());
+        long end = Long.parseLong(meta.get(1).toString());
+        return new Window(begin, end);
+    }
+
+    /**
+     * redis返回库存不足后，一段时间内本地直接判定为售罄；之后重新交给redis判断，取消的订单会归还库存
+     */
+    public void markSoldOut(Long voucherId) {
+        Window window = windows.get(voucherId);
+        if (window != null) {
+            window.soldOutUntil = System.currentTimeMillis() + soldOutRecheckMillis;
+        }
+    }
+
+    /**
+     * 记录秒杀时间并安排结束后的清理
+     */
+    public void register(Long voucherId, LocalDateTime beginTime, LocalDateTime endTime) {
+        long begin = toEpochMilli(beginTime);
+        long end = toEpochMilli(endTime);
+        Window previous = windows.put(voucherId, new Window(begin, end));
+        unknown.invalidate(voucherId);
+        if (previous == null || previous.end != end) {
+            scheduleClose(voucherId, end);
+        }
+    }
+
+    private void scheduleClose(Long voucherId, long end) {
+        long now = System.currentTimeMillis();
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        // 结束时给已下单用户集合设置与库存相同的过期时间
+        scheduler.schedule(() -> {
+            try {
+                stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                        connection.pExpireAt(bytes(SECKILL_ORDER_KEY + voucherId), end + retentionMillis));
+            } catch (Exception e) {
+                log.warn("设置秒杀券{}的下单用户过期时间失败", voucherId, e);
+            }
+        }, Math.max(0, end - now), TimeUnit.MILLISECONDS);
+        // redis中的key过期后清理本地记录
+        scheduler.schedule(() -> {
+            Window window = windows.get(voucherId);
+            if (window != null && window.end == end) {
+                windows.remove(voucherId, window);
+            }
+        }, Math.max(0, end + retentionMillis - now), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 事务提交后预热新创建的秒杀券
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCreated(SeckillVoucherCreatedEvent event) {
+        SeckillVoucher voucher = event.getSeckillVoucher();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            preheat(connection, voucher.getVoucherId(), voucher.getStock(),
+                    voucher.getBeginTime(), voucher.getEndTime(), true);
+            return null;
+        });
+        register(voucher.getVoucherId(), voucher.getBeginTime(), voucher.getEndTime());
+        log.info("秒杀券{}已预热，库存：{}，时间：{} ~ {}", voucher.getVoucherId(), voucher.getStock(),
+                voucher.getBeginTime(), voucher.getEndTime());
+    }
+
+    /**
+     * 写入库存和秒杀时间，可以在管道中调用
+     *
+     * @param overwrite 是否覆盖已有的库存，启动预热时不能覆盖秒杀过程中已经扣减过的库存
+     */
+    public void preheat(RedisConnection connection, Long voucherId, Integer stock,
+                        LocalDateTime beginTime, LocalDateTime endTime, boolean overwrite) {
+        byte[] stockKey = bytes(SECKILL_STOCK_KEY + voucherId);
+        byte[] metaKey = bytes(SECKILL_META_KEY + voucherId);
+        if (overwrite) {
+            connection.set(stockKey, bytes(stock.toString()));
+        } else {
+            connection.setNX(stockKey, bytes(stock.toString()));
+        }
+        Map<byte[], byte[]> meta = new HashMap<>();
+        meta.put(bytes("begin"), bytes(String.valueOf(toEpochMilli(beginTime))));
+        meta.put(bytes("end"), bytes(String.valueOf(toEpochMilli(endTime))));
+        connection.hMSet(metaKey, meta);
+        long expireAt = toEpochMilli(endTime) + retentionMillis;
+        connection.pExpireAt(stockKey, expireAt);
+        connection.pExpireAt(metaKey, expireAt);
+    }
+
+    public long localRejectedCount() {
+        return localRejected.sum();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("vouchers", windows.size());
+        map.put("unknown", unknown.estimatedSize());
+        map.put("localRejected", localRejected.sum());
+        map.put("loaded", loaded.sum());
+        return map;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,18 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import lombok.Getter;
+
+/**
+ * 秒杀券创建事件
+ * 在事务中发布，事务提交后由SeckillGate预热库存和秒杀时间
+ */
+@Getter
+public class SeckillVoucherCreatedEvent {
+
+    private final SeckillVoucher seckillVoucher;
+
+    public SeckillVoucherCreatedEvent(SeckillVoucher seckillVoucher) {
+        this.seckillVoucher = seckillVoucher;
+    }
+}
@@ -0,0 +1,93 @@
+package com.hmdp.utils;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 进程内请求合并：同一个key同一时刻只有一个线程执行加载，其它线程等待并共享它的结果
+ */
+@Component
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, Call> calls = new ConcurrentHashMap<>();
+
+    /**
+     * 被合并掉（没有真正执行加载）的请求总数
+     */
+    private final LongAdder coalesced = new LongAdder();
+
+    private static class Call {
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private final AtomicInteger waiters = new AtomicInteger();
+    }
+
+    /**
+     * 执行加载，同一个key的并发调用只会执行一次loader
+     *
+     * @param key    合并的key
+     * @param loader 真正的加载逻辑
+     * @return 加载结果
+     */
+    @SuppressWarnings("unchecked")
+    public <R> R execute(String key, Supplier<R> loader) {
+        Call call = new Call();
+        Call existing = calls.putIfAbsent(key, call);
+        if (existing != null) {
+            // 1.已经有线程在加载，等待它的结果
+            existing.waiters.incrementAndGet();
+            coalesced.increment();
+            try {
+                return (R) existing.future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+            } finally {
+                existing.waiters.decrementAndGet();
+            }
+        }
+        // 2.当前线程负责加载，结束后唤醒所有等待者
+        try {
+            R r = loader.get();
+            call.future.complete(r);
+            return r;
+        } catch (Throwable e) {
+            call.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, call);
+        }
+    }
+
+    public int inFlight() {
+        return calls.size();
+    }
+
+    /**
+     * 当前正在加载的key及其等待者数量
+     *
+     * @return
+     */
+    public Map<String, Object> stats() {
+        Map<String, Integer> waiters = new LinkedHashMap<>();
+        calls.forEach((key, call) -> waiters.put(key, call.waiters.get()));
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("inFlight", waiters.size());
+        map.put("coalescedTotal", coalesced.sum());
+        map.put("waiters", waiters);
+        return map;
+    }
+}
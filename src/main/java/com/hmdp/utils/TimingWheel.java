@@ -0,0 +1,170 @@
+package com.hmdp.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 分层时间轮：第0层每格tick毫秒，第n层每格 tick * wheelSize^n 毫秒，超出最高层范围时自动增加一层
+ * 添加只需要计算层和格子，O(1)；时间推进到高层的格子时，把其中的任务重新放入低层，到期时从第0层取出
+ * <p>
+ * 非线程安全，由调用方加锁；同一个id只保留一个任务
+ */
+public class TimingWheel {
+
+    private static final class Task {
+        private final long id;
+        private final long deadline;
+
+        Task(long id, long deadline) {
+            this.id = id;
+            this.deadline = deadline;
+        }
+    }
+
+    private final long tickMillis;
+    private final int wheelSize;
+
+    /**
+     * levels.get(n)[i]为第n层的第i格，按需创建
+     */
+    private final List<ArrayDeque<Task>[]> levels = new ArrayList<>();
+    private final Set<Long> ids = new HashSet<>();
+
+    /**
+     * 已经过期、下次推进时直接返回的任务
+     */
+    private final List<Task> due = new ArrayList<>();
+
+    /**
+     * 下一个未处理的tick的起始时间，按tickMillis对齐
+     */
+    private long currentTime;
+
+    public TimingWheel(long tickMillis, int wheelSize, long startTime) {
+        if (tickMillis <= 0 || wheelSize < 2) {
+            throw new IllegalArgumentException("tickMillis必须大于0，wheelSize不能小于2");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.currentTime = startTime - startTime % tickMillis;
+        addLevel();
+    }
+
+    /**
+     * 添加任务，已过期的任务在下次推进时返回
+     *
+     * @return id已存在时返回false
+     */
+    public boolean add(long id, long deadline) {
+        if (!ids.add(id)) {
+            return false;
+        }
+        place(new Task(id, deadline));
+        return true;
+    }
+
+    private void place(Task task) {
+        if (task.deadline < currentTime) {
+            due.add(task);
+            return;
+        }
+        long levelTick = tickMillis;
+        for (int level = 0; ; level++) {
+            if (level == levels.size()) {
+                addLevel();
+            }
+            long slot = task.deadline / levelTick;
+            // 与当前时间相差不到一圈时放在这一层，否则放到更高层
+            if (slot - currentTime / levelTick < wheelSize) {
+                bucket(level, slot).add(task);
+                return;
+            }
+            levelTick *= wheelSize;
+        }
+    }
+
+    /**
+     * 推进到now，返回期间到期的任务id
+     */
+    public List<Long> advance(long now) {
+        List<Long> expired = new ArrayList<>();
+        while (currentTime + tickMillis <= now) {
+            // 当前tick内到期的任务
+            drain(bucket(0, currentTime / tickMillis), expired);
+            currentTime += tickMillis;
+            cascade();
+        }
+        for (Task task : due) {
+            ids.remove(task.id);
+            expired.add(task.id);
+        }
+        due.clear();
+        return expired;
+    }
+
+    /**
+     * 进入高层的新格子时，从最高层开始把格子中的任务逐层放回低层
+     */
+    private void cascade() {
+        long levelTick = tickMillis;
+        int top = 0;
+        for (int level = 1; level < levels.size(); level++) {
+            levelTick *= wheelSize;
+            if (currentTime % levelTick != 0) {
+                break;
+            }
+            top = level;
+        }
+        for (int level = top; level >= 1; level--) {
+            ArrayDeque<Task> bucket = bucket(level, currentTime / levelTickOf(level));
+            if (bucket.isEmpty()) {
+                continue;
+            }
+            List<Task> tasks = new ArrayList<>(bucket);
+            bucket.clear();
+            tasks.forEach(this::place);
+        }
+    }
+
+    private void drain(ArrayDeque<Task> bucket, List<Long> expired) {
+        for (Task task : bucket) {
+            ids.remove(task.id);
+            expired.add(task.id);
+        }
+        bucket.clear();
+    }
+
+    private void addLevel() {
+        @SuppressWarnings("unchecked")
+        ArrayDeque<Task>[] buckets = (ArrayDeque<Task>[]) new ArrayDeque<?>[wheelSize];
+        levels.add(buckets);
+    }
+
+    private ArrayDeque<Task> bucket(int level, long slot) {
+        ArrayDeque<Task>[] buckets = levels.get(level);
+        int index = (int) (slot % wheelSize);
+        if (buckets[index] == null) {
+            buckets[index] = new ArrayDeque<>();
+        }
+        return buckets[index];
+    }
+
+    private long levelTickOf(int level) {
+        long levelTick = tickMillis;
+        for (int i = 0; i < level; i++) {
+            levelTick *= wheelSize;
+        }
+        return levelTick;
+    }
+
+    public boolean contains(long id) {
+        return ids.contains(id);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+}
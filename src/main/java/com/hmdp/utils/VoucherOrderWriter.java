@@ -0,0 +1,656 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.VoucherOrderMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import cn.hutool.core.util.StrUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * 秒杀订单的异步写入（组提交）
+ * 通过redis资格判断的订单发送到redis的Stream（SECKILL_ORDER_STREAM），所有节点组成一个消费者组，
+ * 由单独的线程按批读取：最多max-batch-size条，不足时再等待max-linger-ms凑批，
+ * 在一个事务中用一条多行INSERT写入tb_voucher_order，每个秒杀券只执行一次扣减库存的UPDATE，事务提交后再ACK并删除消息；
+ * 整批写入失败时按指数退避重试，仍然失败则逐条写入，逐条写入失败后归还redis中的库存和下单资格。
+ * 节点宕机时已读取未ACK的消息留在pending列表中，由其它节点的恢复任务在空闲超过min-idle-ms后认领并写入
+ */
+@Slf4j
+@Component
+public class VoucherOrderWriter {
+
+    private final VoucherOrderMapper voucherOrderMapper;
+    private final SeckillVoucherMapper seckillVoucherMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final OrderTimeoutCanceller orderTimeoutCanceller;
+    private final String group;
+    private final String consumerName;
+    private final int maxBatchSize;
+    private final long maxLingerMillis;
+    private final long blockMillis;
+    private final Duration minIdle;
+    private final int maxRetries;
+    private final long retryDelayMillis;
+
+    private final Thread worker;
+    private volatile boolean running = true;
+    private volatile boolean groupCreated;
+
+    /**
+     * 消费者组未读取的消息数和已读取未ACK的消息数，由恢复任务定期刷新
+     */
+    private volatile long lag;
+    private volatile long pending;
+
+    /**
+     * 写入结果
+     */
+    private enum Outcome {
+        CREATED,
+        /**
+         * 用户已有订单
+         */
+        DUPLICATED,
+        /**
+         * 数据库库存不足，说明redis中的库存与数据库不一致，不归还redis库存
+         */
+        SOLD_OUT,
+        /**
+         * 订单已经写入（消息重复投递），包括之后被超时取消的订单
+         */
+        EXISTED
+    }
+
+    /**
+     * 读取到的订单消息，消息id中的时间戳即为下单时间，用于统计从下单到事务提交的延迟
+     */
+    private static class PendingOrder {
+        private final VoucherOrder order;
+        private final RecordId recordId;
+
+        PendingOrder(VoucherOrder order, RecordId recordId) {
+            this.order = order;
+            this.recordId = recordId;
+        }
+    }
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder duplicated = new LongAdder();
+    private final LongAdder redelivered = new LongAdder();
+    private final LongAdder scheduleFailed = new LongAdder();
+    private final LongAdder soldOut = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder claimed = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+    private final Timer commitTimer;
+    private final Timer latencyTimer;
+    private final DistributionSummary batchSizes;
+
+    public VoucherOrderWriter(VoucherOrderMapper voucherOrderMapper, SeckillVoucherMapper seckillVoucherMapper,
+                              TransactionTemplate transactionTemplate, StringRedisTemplate stringRedisTemplate,
+                              OrderTimeoutCanceller orderTimeoutCanceller, MeterRegistry registry,
+                              @Value("${hmdp.seckill.order.group:order-writers}") String group,
+                              @Value("${hmdp.seckill.order.consumer:}") String consumerName,
+                              @Value("${hmdp.seckill.order.max-batch-size:200}") int maxBatchSize,
+                              @Value("${hmdp.seckill.order.max-linger-ms:10}") long maxLingerMillis,
+                              @Value("${hmdp.seckill.order.block-ms:2000}") long blockMillis,
+                              @Value("${hmdp.seckill.order.min-idle-ms:30000}") long minIdleMillis,
+                              @Value("${hmdp.seckill.order.max-retries:3}") int maxRetries,
+                              @Value("${hmdp.seckill.order.retry-delay-ms:100}") long retryDelayMillis) {
+        this.voucherOrderMapper = voucherOrderMapper;
+        this.seckillVoucherMapper = seckillVoucherMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.orderTimeoutCanceller = orderTimeoutCanceller;
+        this.group = group;
+        // 未配置时使用 进程号@主机名，同一台机器上的多个实例也不会重复
+        this.consumerName = StrUtil.isBlank(consumerName) ? ManagementFactory.getRuntimeMXBean().getName() : consumerName;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerMillis = maxLingerMillis;
+        this.blockMillis = blockMillis;
+        this.minIdle = Duration.ofMillis(minIdleMillis);
+        this.maxRetries = maxRetries;
+        this.retryDelayMillis = retryDelayMillis;
+        // 写入事务的耗时，整批写入时一批记录一次
+        this.commitTimer = Timer.builder("seckill.order.commit")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        // 从下单到订单写入数据库的端到端延迟，包含在stream中等待、攒批和重试的时间
+        this.latencyTimer = Timer.builder("seckill.order.latency")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        this.batchSizes = DistributionSummary.builder("seckill.order.batch.size").register(registry);
+        this.worker = new Thread(this::consume, "voucher-order-writer");
+        this.worker.setDaemon(true);
+        Gauge.builder("seckill.order.stream.lag", this, VoucherOrderWriter::lag).register(registry);
+        Gauge.builder("seckill.order.stream.pending", this, VoucherOrderWriter::pending).register(registry);
+        FunctionCounter.builder("seckill.order.written", this, VoucherOrderWriter::writtenCount).register(registry);
+        FunctionCounter.builder("seckill.order.failed", this, VoucherOrderWriter::failedCount).register(registry);
+    }
+
+    /**
+     * 依赖注入完成后再启动写入线程，构造函数中启动会让线程看到未完成初始化的对象
+     */
+    @PostConstruct
+    public void start() {
+        worker.start();
+    }
+
+    /**
+     * 发送订单消息，不等待写入数据库；seckill.lua在脚本中直接发送，不经过这里
+     */
+    public void publish(VoucherOrder order) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("userId", order.getUserId().toString());
+        fields.put("voucherId", order.getVoucherId().toString());
+        fields.put("id", order.getId().toString());
+        stringRedisTemplate.opsForStream().add(SECKILL_ORDER_STREAM, fields);
+    }
+
+    private void consume() {
+        // 先处理本消费者上次已读取未ACK的消息（相同的消费者名重启时），处理完后再读取新消息
+        boolean backlog = true;
+        while (running) {
+            try {
+                ensureGroup();
+                List<MapRecord<String, Object, Object>> records = read(backlog, maxBatchSize, blockMillis);
+                if (records.isEmpty()) {
+                    backlog = false;
+                    continue;
+                }
+                if (!backlog && records.size() < maxBatchSize && maxLingerMillis > 0) {
+                    // 不足一批，再等待一会儿凑批
+                    records = new ArrayList<>(records);
+                    records.addAll(read(false, maxBatchSize - records.size(), maxLingerMillis));
+                }
+                handle(records);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.error("读取秒杀订单消息失败", e);
+                sleepQuietly(1000);
+            }
+        }
+    }
+
+    /**
+     * @param backlog true：读取本消费者已读取未ACK的消息；false：阻塞读取新消息
+     */
+    private List<MapRecord<String, Object, Object>> read(boolean backlog, int count, long block) {
+        StreamReadOptions options = StreamReadOptions.empty().count(count);
+        if (!backlog) {
+            options = options.block(Duration.ofMillis(block));
+        }
+        StreamOffset<String> offset = StreamOffset.create(SECKILL_ORDER_STREAM,
+                backlog ? ReadOffset.from("0") : ReadOffset.lastConsumed());
+        // read的StreamOffset参数为泛型可变参数，只传一个偏移量，不存在堆污染
+        @SuppressWarnings("unchecked")
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                Consumer.from(group, consumerName), options, offset);
+        return records == null ? Collections.emptyList() : records;
+    }
+
+    /**
+     * 创建消费者组，Stream不存在时一并创建
+     */
+    private void ensureGroup() {
+        if (groupCreated) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(rawKey(SECKILL_ORDER_STREAM), group, ReadOffset.from("0"), true));
+        } catch (RedisSystemException e) {
+            if (e.getMessage() == null || !e.getMessage().contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+        groupCreated = true;
+    }
+
+    /**
+     * 写入一批消息对应的订单，写入完成（包括逐条写入失败后归还资格）后ACK
+     */
+    private void handle(List<? extends MapRecord<String, ?, ?>> records) throws InterruptedException {
+        List<PendingOrder> batch = new ArrayList<>(records.size());
+        List<RecordId> malformedIds = new ArrayList<>();
+        for (MapRecord<String, ?, ?> record : records) {
+            VoucherOrder order = toOrder(record);
+            if (order == null) {
+                malformedIds.add(record.getId());
+            } else {
+                batch.add(new PendingOrder(order, record.getId()));
+            }
+        }
+        if (!malformedIds.isEmpty()) {
+            malformed.add(malformedIds.size());
+            log.error("无法解析的秒杀订单消息：{}", malformedIds);
+            acknowledge(malformedIds);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        writeBatch(batch);
+        List<RecordId> ids = new ArrayList<>(batch.size());
+        batch.forEach(pending -> ids.add(pending.recordId));
+        acknowledge(ids);
+    }
+
+    /**
+     * ACK后从Stream中删除，Stream中只保留未读取和未ACK的消息，不会无限增长
+     */
+    private void acknowledge(List<RecordId> ids) {
+        RecordId[] recordIds = ids.toArray(new RecordId[0]);
+        byte[] key = rawKey(SECKILL_ORDER_STREAM);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.streamCommands().xAck(key, group, recordIds);
+            connection.streamCommands().xDel(key, recordIds);
+            return null;
+        });
+    }
+
+    private static VoucherOrder toOrder(MapRecord<String, ?, ?> record) {
+        Map<?, ?> value = record.getValue();
+        try {
+            long millis = record.getId().getTimestamp();
+            return new VoucherOrder()
+                    .setId(Long.valueOf(value.get("id").toString()))
+                    .setUserId(Long.valueOf(value.get("userId").toString()))
+                    .setVoucherId(Long.valueOf(value.get("voucherId").toString()))
+                    .setCreateTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 认领空闲超过min-idle-ms的pending消息（消费者宕机或处理中断）并写入，同时刷新积压指标
+     */
+    @Scheduled(initialDelayString = "${hmdp.seckill.order.recovery-interval-ms:5000}",
+            fixedDelayString = "${hmdp.seckill.order.recovery-interval-ms:5000}")
+    public void recover() {
+        if (!groupCreated || !running) {
+            return;
+        }
+        try {
+            List<RecordId> idleIds = new ArrayList<>();
+            for (PendingMessage message : stringRedisTemplate.opsForStream()
+                    .pending(SECKILL_ORDER_STREAM, group, Range.unbounded(), maxBatchSize)) {
+                if (message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0) {
+                    idleIds.add(message.getId());
+                }
+            }
+            if (!idleIds.isEmpty()) {
+                // XCLAIM会再次检查空闲时间，多个节点同时认领时只有一个成功
+                List<ByteRecord> records = stringRedisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                        connection.streamCommands().xClaim(rawKey(SECKILL_ORDER_STREAM), group, consumerName,
+                                minIdle, idleIds.toArray(new RecordId[0])));
+                if (records != null && !records.isEmpty()) {
+                    claimed.add(records.size());
+                    log.warn("认领了{}条空闲的秒杀订单消息", records.size());
+                    List<MapRecord<String, String, String>> converted = new ArrayList<>(records.size());
+                    for (ByteRecord record : records) {
+                        converted.add(record.deserialize(stringRedisTemplate.getStringSerializer()));
+                    }
+                    handle(converted);
+                }
+            }
+            refreshLag();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("恢复秒杀订单消息失败", e);
+        }
+    }
+
+    /**
+     * 已ACK的消息都会被删除，Stream中只剩未投递和未ACK的消息，lag = XLEN - pending，不需要读取消息内容
+     */
+    private void refreshLag() {
+        StreamInfo.XInfoGroup info = stringRedisTemplate.opsForStream().groups(SECKILL_ORDER_STREAM).stream()
+                .filter(g -> g.groupName().equals(group))
+                .findFirst()
+                .orElse(null);
+        if (info == null) {
+            return;
+        }
+        Long length = stringRedisTemplate.opsForStream().size(SECKILL_ORDER_STREAM);
+        pending = info.pendingCount();
+        lag = Math.max((length == null ? 0 : length) - pending, 0);
+    }
+
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeBatch(List<PendingOrder> batch) throws InterruptedException {
+        batchSizes.record(batch.size());
+        List<VoucherOrder> orders = new ArrayList<>(batch.size());
+        batch.forEach(pending -> orders.add(pending.order));
+        // 写入之前记录支付截止时间，写入后宕机也不会漏掉超时取消
+        scheduleTimeout(orders);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                Map<Outcome, List<PendingOrder>> outcomes = commitTimer.record(
+                        () -> transactionTemplate.execute(status -> createBatch(batch)));
+                record(outcomes);
+                return;
+            } catch (Exception e) {
+                if (attempt >= maxRetries) {
+                    log.error("秒杀订单批量写入失败，已重试{}次，改为逐条写入，数量：{}", attempt, batch.size(), e);
+                    for (PendingOrder pending : batch) {
+                        write(pending);
+                    }
+                    return;
+                }
+                retries.increment();
+                log.warn("秒杀订单批量写入失败，稍后重试，数量：{}", batch.size(), e);
+                TimeUnit.MILLISECONDS.sleep(retryDelayMillis << attempt);
+            }
+        }
+    }
+
+    /**
+     * 记录支付截止时间；失败时只记录日志，不影响订单写入
+     */
+    private void scheduleTimeout(List<VoucherOrder> orders) {
+        try {
+            orderTimeoutCanceller.schedule(orders);
+        } catch (Exception e) {
+            scheduleFailed.add(orders.size());
+            log.error("记录订单支付截止时间失败，这些订单不会自动取消，数量：{}", orders.size(), e);
+        }
+    }
+
+    /**
+     * 在一个事务中写入一批订单：一次查询过滤已有订单，每个秒杀券一次扣减库存，一条多行INSERT
+     */
+    private Map<Outcome, List<PendingOrder>> createBatch(List<PendingOrder> batch) {
+        Map<Outcome, List<PendingOrder>> outcomes = new EnumMap<>(Outcome.class);
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, new ArrayList<>());
+        }
+        // 1.一人一单：redis中的下单记录丢失时以数据库为准，同一批内也不能重复；超时取消的订单不算
+        //   同一次查询得到已写入的订单id，重复投递的消息直接跳过，不会因主键冲突导致整批失败
+        Set<Long> userIds = new HashSet<>();
+        Set<Long> voucherIds = new HashSet<>();
+        for (PendingOrder pending : batch) {
+            userIds.add(pending.order.getUserId());
+            voucherIds.add(pending.order.getVoucherId());
+        }
+        Set<Long> existed = new HashSet<>();
+        Set<String> ordered = new HashSet<>();
+        voucherOrderMapper.selectList(new QueryWrapper<VoucherOrder>()
+                        .select("id", "user_id", "voucher_id", "status")
+                        .in("voucher_id", voucherIds)
+                        .in("user_id", userIds))
+                .forEach(order -> {
+                    existed.add(order.getId());
+                    if (order.getStatus() == null || order.getStatus() != VoucherOrder.STATUS_CANCELLED) {
+                        ordered.add(order.getUserId() + ":" + order.getVoucherId());
+                    }
+                });
+        Map<Long, List<PendingOrder>> byVoucher = new LinkedHashMap<>();
+        for (PendingOrder pending : batch) {
+            VoucherOrder order = pending.order;
+            if (!existed.add(order.getId())) {
+                outcomes.get(Outcome.EXISTED).add(pending);
+                continue;
+            }
+            if (!ordered.add(order.getUserId() + ":" + order.getVoucherId())) {
+                log.warn("用户{}重复购买秒杀券{}，忽略订单{}", order.getUserId(), order.getVoucherId(), order.getId());
+                outcomes.get(Outcome.DUPLICATED).add(pending);
+                continue;
+            }
+            byVoucher.computeIfAbsent(order.getVoucherId(), id -> new ArrayList<>()).add(pending);
+        }
+        // 2.每个秒杀券一次扣减库存；库存不足以扣减整批时逐个扣减，直到库存为0
+        List<VoucherOrder> orders = new ArrayList<>();
+        byVoucher.forEach((voucherId, pendings) -> {
+            if (seckillVoucherMapper.decreaseStock(voucherId, pendings.size()) > 0) {
+                pendings.forEach(pending -> orders.add(pending.order));
+                outcomes.get(Outcome.CREATED).addAll(pendings);
+                return;
+            }
+            for (PendingOrder pending : pendings) {
+                if (seckillVoucherMapper.decreaseStock(voucherId, 1) > 0) {
+                    orders.add(pending.order);
+                    outcomes.get(Outcome.CREATED).add(pending);
+                } else {
+                    log.error("秒杀券{}数据库库存不足，丢弃订单{}", voucherId, pending.order.getId());
+                    outcomes.get(Outcome.SOLD_OUT).add(pending);
+                }
+            }
+        });
+        // 3.一条多行INSERT写入订单
+        if (!orders.isEmpty()) {
+            voucherOrderMapper.insertBatch(orders);
+        }
+        return outcomes;
+    }
+
+    /**
+     * 逐条写入，整批写入失败时使用，隔离有问题的订单
+     */
+    private void write(PendingOrder pending) throws InterruptedException {
+        VoucherOrder order = pending.order;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                Outcome outcome = commitTimer.record(() -> transactionTemplate.execute(status -> create(order)));
+                Map<Outcome, List<PendingOrder>> outcomes = new EnumMap<>(Outcome.class);
+                List<PendingOrder> single = new ArrayList<>(1);
+                single.add(pending);
+                outcomes.put(outcome, single);
+                record(outcomes);
+                return;
+            } catch (DuplicateKeyException e) {
+                // 重试前已经提交成功
+                written.increment();
+                latencyTimer.record(System.currentTimeMillis() - pending.recordId.getTimestamp(), TimeUnit.MILLISECONDS);
+                return;
+            } catch (Exception e) {
+                if (attempt >= maxRetries) {
+                    failed.increment();
+                    log.error("秒杀订单写入失败，已重试{}次，归还库存，订单：{}", attempt, order, e);
+                    release(order);
+                    return;
+                }
+                retries.increment();
+                log.warn("秒杀订单写入失败，稍后重试，订单id：{}", order.getId(), e);
+                TimeUnit.MILLISECONDS.sleep(retryDelayMillis << attempt);
+            }
+        }
+    }
+
+    /**
+     * 在事务中写入一个订单并扣减库存
+     */
+    private Outcome create(VoucherOrder order) {
+        List<VoucherOrder> existing = voucherOrderMapper.selectList(new QueryWrapper<VoucherOrder>()
+                .select("id", "status")
+                .eq("user_id", order.getUserId()).eq("voucher_id", order.getVoucherId()));
+        if (existing.stream().anyMatch(o -> o.getId().equals(order.getId()))) {
+            return Outcome.EXISTED;
+        }
+        if (existing.stream().anyMatch(o -> o.getStatus() == null || o.getStatus() != VoucherOrder.STATUS_CANCELLED)) {
+            log.warn("用户{}重复购买秒杀券{}，忽略订单{}", order.getUserId(), order.getVoucherId(), order.getId());
+            return Outcome.DUPLICATED;
+        }
+        // 乐观锁：库存足够才扣减
+        if (seckillVoucherMapper.decreaseStock(order.getVoucherId(), 1) == 0) {
+            log.error("秒杀券{}数据库库存不足，丢弃订单{}", order.getVoucherId(), order.getId());
+            return Outcome.SOLD_OUT;
+        }
+        voucherOrderMapper.insert(order);
+        return Outcome.CREATED;
+    }
+
+    /**
+     * 事务提交后记录结果和延迟
+     */
+    private void record(Map<Outcome, List<PendingOrder>> outcomes) {
+        long now = System.currentTimeMillis();
+        outcomes.forEach((outcome, pendings) -> {
+            switch (outcome) {
+                case CREATED:
+                    written.add(pendings.size());
+                    pendings.forEach(pending ->
+                            latencyTimer.record(now - pending.recordId.getTimestamp(), TimeUnit.MILLISECONDS));
+                    break;
+                case DUPLICATED:
+                    duplicated.add(pendings.size());
+                    // lua脚本已经为这个订单扣减了redis库存，用户确实已有订单，只归还库存，不清除下单记录
+                    pendings.forEach(pending -> returnStock(pending.order));
+                    break;
+                case EXISTED:
+                    redelivered.add(pendings.size());
+                    break;
+                default:
+                    soldOut.add(pendings.size());
+            }
+        });
+    }
+
+    /**
+     * 只归还redis中的库存，用于重复下单被丢弃的订单
+     */
+    private void returnStock(VoucherOrder order) {
+        try {
+            stringRedisTemplate.opsForValue().increment(SECKILL_STOCK_KEY + order.getVoucherId());
+        } catch (Exception e) {
+            log.error("归还秒杀库存失败，订单：{}", order, e);
+        }
+    }
+
+    /**
+     * 归还redis中的库存和下单资格，用户可以重新下单
+     */
+    public void release(VoucherOrder order) {
+        byte[] stockKey = (SECKILL_STOCK_KEY + order.getVoucherId()).getBytes(StandardCharsets.UTF_8);
+        byte[] orderKey = (SECKILL_ORDER_KEY + order.getVoucherId()).getBytes(StandardCharsets.UTF_8);
+        byte[] userId = order.getUserId().toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.incr(stockKey);
+                connection.sRem(orderKey, userId);
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("归还秒杀库存失败，订单：{}", order, e);
+        }
+    }
+
+    public long lag() {
+        return lag;
+    }
+
+    public long pending() {
+        return pending;
+    }
+
+    public long writtenCount() {
+        return written.sum();
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("consumer", consumerName);
+        map.put("lag", lag);
+        map.put("pending", pending);
+        map.put("written", written.sum());
+        map.put("duplicated", duplicated.sum());
+        map.put("redelivered", redelivered.sum());
+        map.put("scheduleFailed", scheduleFailed.sum());
+        map.put("soldOut", soldOut.sum());
+        map.put("retries", retries.sum());
+        map.put("failed", failed.sum());
+        map.put("claimed", claimed.sum());
+        map.put("malformed", malformed.sum());
+        map.put("batches", batchSizes.count());
+        map.put("avgBatchSize", batchSizes.mean());
+        for (ValueAtPercentile percentile : commitTimer.takeSnapshot().percentileValues()) {
+            map.put("commitP" + Math.round(percentile.percentile() * 100) + "Ms",
+                    percentile.value(TimeUnit.MILLISECONDS));
+        }
+        for (ValueAtPercentile percentile : latencyTimer.takeSnapshot().percentileValues()) {
+            map.put("latencyP" + Math.round(percentile.percentile() * 100) + "Ms",
+                    percentile.value(TimeUnit.MILLISECONDS));
+        }
+        return map;
+    }
+
+    /**
+     * 随Spring容器关闭：停止读取，等待当前一批写完；未读取的消息留给其它节点
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        worker.join(blockMillis + TimeUnit.SECONDS.toMillis(30));
+    }
+}
@@ -0,0 +1,57 @@
+package com.hmdp.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * 以HTTP响应中的格式（Spring MVC的ObjectMapper输出的JSON）保存缓存值
+ * 命中时可以把缓存值直接写入响应，不需要反序列化再序列化，见CacheClient.queryRaw
+ */
+@Component
+public class WireCacheCodec implements CacheCodec {
+
+    public static final String NAME = "wire";
+    public static final byte ID = 2;
+
+    private final ObjectMapper objectMapper;
+
+    public WireCacheCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public byte version() {
+        return 1;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, int offset, int length, Class<T> type) {
+        try {
+            return objectMapper.readValue(bytes, offset, length, type);
+        } catch (IOException e) {
+            // 实体字段变化后旧数据无法解析，按缓存未命中处理
+            return null;
+        }
+    }
+}
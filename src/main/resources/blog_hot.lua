@@ -0,0 +1,60 @@
+-- 更新热门笔记排行榜中一批笔记的统计和分数
+-- KEYS[1]：排行榜 blog:hot，member为笔记id，score为热度
+-- KEYS[2]：热度统计 blog:hot:stat，field为笔记id，值为 点赞数:评论数:发布时间戳
+-- ARGV[1]：衰减函数 none、exponential、gravity，ARGV[2]：半衰期毫秒数，ARGV[3]：重力系数
+-- ARGV[4]：点赞权重，ARGV[5]：评论权重，ARGV[6]：当前时间戳，ARGV[7]：排行榜最大长度
+-- ARGV[8]开始每6个一组：笔记id、点赞数增量、评论数增量、初始点赞数、初始评论数、发布时间戳
+-- 没有统计时使用初始值（已经包含本次的增量），初始点赞数为空字符串时不创建，返回这些笔记的id由调用方查询数据库后重试
+local decay = ARGV[1]
+local halfLife = tonumber(ARGV[2])
+local gravity = tonumber(ARGV[3])
+local likeWeight = tonumber(ARGV[4])
+local commentWeight = tonumber(ARGV[5])
+local now = tonumber(ARGV[6])
+local maxSize = tonumber(ARGV[7])
+
+local function score(likes, comments, created)
+    local weight = math.max(1 + likes * likeWeight + comments * commentWeight, 1)
+    if decay == 'exponential' then
+        -- weight * 2^((created - now) / halfLife) 的对数去掉与笔记无关的now，分数不随时间变化，不需要重新计算
+        return math.log(weight) + created * math.log(2) / halfLife
+    elseif decay == 'gravity' then
+        -- weight / (发布小时数 + 2)^gravity，需要定期重新计算
+        local hours = math.max(now - created, 0) / 3600000
+        return weight / math.pow(hours + 2, gravity)
+    end
+    return weight
+end
+
+local missing = {}
+for i = 8, #ARGV, 6 do
+    local id = ARGV[i]
+    local likes, comments, created
+    local stat = redis.call('hget', KEYS[2], id)
+    if stat then
+        local l, c, t = string.match(stat, '^(-?%d+):(-?%d+):(%d+)$')
+        likes = math.max(tonumber(l) + tonumber(ARGV[i + 1]), 0)
+        comments = math.max(tonumber(c) + tonumber(ARGV[i + 2]), 0)
+        created = tonumber(t)
+    elseif ARGV[i + 3] ~= '' then
+        likes = tonumber(ARGV[i + 3])
+        comments = tonumber(ARGV[i + 4])
+        created = tonumber(ARGV[i + 5])
+    end
+    if likes then
+        redis.call('hset', KEYS[2], id, string.format('%d:%d:%d', likes, comments, created))
+        redis.call('zadd', KEYS[1], score(likes, comments, created), id)
+    else
+        table.insert(missing, id)
+    end
+end
+
+-- 超出最大长度时移除分数最低的笔记
+local overflow = redis.call('zcard', KEYS[1]) - maxSize
+if overflow > 0 then
+    local removed = redis.call('zpopmin', KEYS[1], overflow)
+    for i = 1, #removed, 2 do
+        redis.call('hdel', KEYS[2], removed[i])
+    end
+end
+return missing
@@ -0,0 +1,13 @@
+-- 点赞或取消点赞，同时记录点赞数的增量，由BlogLikeFlusher定期写回数据库
+-- KEYS[1]：点赞的用户 blog:liked:<blogId>，member为用户id，score为点赞时间
+-- KEYS[2]：未写回的点赞数增量 blog:liked-delta，field为笔记id
+-- ARGV[1]：用户id，ARGV[2]：笔记id，ARGV[3]：当前时间戳
+-- 返回1表示点赞，0表示取消点赞
+if redis.call('zscore', KEYS[1], ARGV[1]) then
+    redis.call('zrem', KEYS[1], ARGV[1])
+    redis.call('hincrby', KEYS[2], ARGV[2], -1)
+    return 0
+end
+redis.call('zadd', KEYS[1], ARGV[3], ARGV[1])
+redis.call('hincrby', KEYS[2], ARGV[2], 1)
+return 1
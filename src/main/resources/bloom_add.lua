@@ -0,0 +1,12 @@
+-- 布隆过滤器新增id：只在bitmap已经存在时置位
+-- bitmap被清空或淘汰后不能由新增的id重新建出一份不完整的位数组，否则重启的节点会把它当作完整的过滤器加载，拦截已有的id
+-- KEYS[1]：bitmap的key
+-- ARGV：需要置为1的位下标
+-- 返回：1已写入，0 bitmap不存在，等待下一次重建
+if redis.call('exists', KEYS[1]) == 0 then
+    return 0
+end
+for i = 1, #ARGV do
+    redis.call('setbit', KEYS[1], ARGV[i], 1)
+end
+return 1
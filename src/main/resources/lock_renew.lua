@@ -0,0 +1,9 @@
+-- 看门狗续期：锁仍由自己持有时重置过期时间
+-- KEYS[1]：锁的key
+-- ARGV[1]：加锁时写入的令牌
+-- ARGV[2]：新的过期时间（毫秒）
+-- 返回：1续期成功，0锁已过期或已被其它节点持有
+if redis.call('get', KEYS[1]) == ARGV[1] then
+    return redis.call('pexpire', KEYS[1], ARGV[2])
+end
+return 0
@@ -0,0 +1,8 @@
+-- 释放分布式锁：只有锁中保存的令牌与自己的一致时才删除，避免误删其它节点的锁
+-- KEYS[1]：锁的key
+-- ARGV[1]：加锁时写入的令牌
+-- 返回：1释放成功，0锁已过期或已被其它节点持有
+if redis.call('get', KEYS[1]) == ARGV[1] then
+    return redis.call('del', KEYS[1])
+end
+return 0
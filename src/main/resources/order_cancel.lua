@@ -0,0 +1,9 @@
+-- 订单超时取消后归还redis中的秒杀库存和下单资格
+-- KEYS[1]：库存 seckill:stock:<voucherId>
+-- KEYS[2]：已下单的用户 seckill:order:<voucherId>
+-- ARGV：取消订单的用户id
+-- 秒杀结束后库存key会过期，此时只移除下单用户，不重新创建库存
+if redis.call('exists', KEYS[1]) == 1 then
+    redis.call('incrby', KEYS[1], #ARGV)
+end
+return redis.call('srem', KEYS[2], unpack(ARGV))
@@ -0,0 +1,14 @@
+-- 认领到期的待取消订单：把分数改为租约到期时间，租约内其它节点不会再处理
+-- 节点在租约内宕机时，订单仍在ZSET中，租约到期后由其它节点重新加载并取消
+-- KEYS[1]：order:timeout，member为订单id，score为支付截止时间
+-- ARGV[1]：当前时间戳，ARGV[2]：租约到期时间戳，ARGV[3]开始为订单id
+-- 返回认领成功的订单id，未到期（包括被其它节点认领）和已经移除的订单不返回
+local claimed = {}
+for i = 3, #ARGV do
+    local score = redis.call('zscore', KEYS[1], ARGV[i])
+    if score and tonumber(score) <= tonumber(ARGV[1]) then
+        redis.call('zadd', KEYS[1], ARGV[2], ARGV[i])
+        table.insert(claimed, ARGV[i])
+    end
+end
+return claimed
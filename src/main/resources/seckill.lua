@@ -0,0 +1,32 @@
+-- 秒杀资格判断：时间窗口、库存、一人一单，全部通过后扣减库存、记录下单用户并把订单发送到消息队列
+-- KEYS[1]：库存 seckill:stock:<voucherId>
+-- KEYS[2]：秒杀时间 seckill:meta:<voucherId>，hash中的begin、end为毫秒时间戳
+-- KEYS[3]：已下单的用户 seckill:order:<voucherId>
+-- KEYS[4]：订单消息队列 stream.orders
+-- ARGV[1]：用户id
+-- ARGV[2]：当前时间（毫秒）
+-- ARGV[3]：秒杀券id
+-- ARGV[4]：订单id
+-- 返回：0成功 1库存不足 2重复下单 3未开始 4已结束 5库存未预热
+local stock = redis.call('get', KEYS[1])
+if not stock then
+    return 5
+end
+local window = redis.call('hmget', KEYS[2], 'begin', 'end')
+local now = tonumber(ARGV[2])
+if window[1] and now < tonumber(window[1]) then
+    return 3
+end
+if window[2] and now > tonumber(window[2]) then
+    return 4
+end
+if tonumber(stock) <= 0 then
+    return 1
+end
+if redis.call('sismember', KEYS[3], ARGV[1]) == 1 then
+    return 2
+end
+redis.call('incrby', KEYS[1], -1)
+redis.call('sadd', KEYS[3], ARGV[1])
+redis.call('xadd', KEYS[4], '*', 'userId', ARGV[1], 'voucherId', ARGV[3], 'id', ARGV[4])
+return 0
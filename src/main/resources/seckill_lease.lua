@@ -0,0 +1,28 @@
+-- 节点从redis中租用一批秒杀库存，租用的数量不超过剩余库存
+-- KEYS[1]：库存 seckill:stock:<voucherId>
+-- KEYS[2]：秒杀时间 seckill:meta:<voucherId>
+-- ARGV[1]：每次租用的数量
+-- ARGV[2]：当前时间（毫秒）
+-- 返回：{租到的数量或负的错误码, 结束时间}，错误码与seckill.lua一致：-3未开始 -4已结束 -5库存未预热
+local stock = redis.call('get', KEYS[1])
+if not stock then
+    return {-5, 0}
+end
+local window = redis.call('hmget', KEYS[2], 'begin', 'end')
+local now = tonumber(ARGV[2])
+local endTime = 0
+if window[2] then
+    endTime = tonumber(window[2])
+end
+if window[1] and now < tonumber(window[1]) then
+    return {-3, endTime}
+end
+if window[2] and now > endTime then
+    return {-4, endTime}
+end
+local n = math.min(tonumber(stock), tonumber(ARGV[1]))
+if n <= 0 then
+    return {0, endTime}
+end
+redis.call('decrby', KEYS[1], n)
+return {n, endTime}
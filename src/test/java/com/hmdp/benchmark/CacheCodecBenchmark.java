@@ -0,0 +1,96 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodecs;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.RedisData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比JSON与二进制编码器缓存一个逻辑过期的Shop时的字节数和解码耗时
+ * <p>
+ * 运行方式：在IDE中直接运行main方法，或者
+ * mvn test-compile exec:java -Dexec.mainClass=com.hmdp.benchmark.CacheCodecBenchmark -Dexec.classpathScope=test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheCodecBenchmark {
+
+    private static final String KEY = "cache:shop:1";
+
+    private CacheCodecs jsonCodecs;
+    private CacheCodecs binaryCodecs;
+    private byte[] jsonBytes;
+    private byte[] binaryBytes;
+
+    @Setup
+    public void setup() {
+        jsonCodecs = codecs("");
+        binaryCodecs = codecs("cache:shop:=binary");
+        Shop shop = sampleShop();
+        LocalDateTime expireTime = LocalDateTime.now().plusMinutes(30);
+        jsonBytes = jsonCodecs.encode(KEY, shop, expireTime);
+        binaryBytes = binaryCodecs.encode(KEY, shop, expireTime);
+    }
+
+    @Benchmark
+    public RedisData decodeJson() {
+        return jsonCodecs.decode(jsonBytes, Shop.class, true);
+    }
+
+    @Benchmark
+    public RedisData decodeBinary() {
+        return binaryCodecs.decode(binaryBytes, Shop.class, true);
+    }
+
+    private static CacheCodecs codecs(String config) {
+        return new CacheCodecs(Arrays.asList(new JsonCacheCodec(), new BinaryCacheCodec(128)), config);
+    }
+
+    static Shop sampleShop() {
+        return new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg,https://qcloud.dpfile.com/pc/IOf6VX3qaBgFXFVgp75w-KKJmWZjFc8GXDU8g9bQC6YGCpAmG00QbfT4vCCBj7njuzFvxlbkWx5uwqY2qcjixFEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vmIU_8ZGOT1OjpJmLxG6urQ.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        CacheCodecBenchmark benchmark = new CacheCodecBenchmark();
+        benchmark.setup();
+        System.out.printf("bytes/entry: json=%d, binary=%d%n", benchmark.jsonBytes.length, benchmark.binaryBytes.length);
+        new Runner(new OptionsBuilder().include(CacheCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
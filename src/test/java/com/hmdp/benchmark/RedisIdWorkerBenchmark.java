@@ -0,0 +1,85 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.RedisIdWorker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单节点生成id的吞吐量：segmentSize=1相当于每个id一次INCR，1000为号段预取
+ * redis用内存计数器代替，每次租用号段模拟一次往返延迟
+ * <p>
+ * 运行方式：在IDE中直接运行main方法，或者
+ * mvn test-compile exec:java -Dexec.mainClass=com.hmdp.benchmark.RedisIdWorkerBenchmark -Dexec.classpathScope=test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class RedisIdWorkerBenchmark {
+
+    /**
+     * 模拟的redis往返延迟
+     */
+    private static final long REDIS_RTT_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    @Param({"1", "1000", "10000"})
+    private int segmentSize;
+
+    private RedisIdWorker idWorker;
+
+    @Setup
+    public void setup() {
+        idWorker = new LocalIdWorker(segmentSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        idWorker.shutdown();
+    }
+
+    @Benchmark
+    public long nextId() {
+        return idWorker.nextId("order");
+    }
+
+    private static class LocalIdWorker extends RedisIdWorker {
+        private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+        LocalIdWorker(int segmentSize) {
+            super(null, segmentSize, 0.5, 5000);
+        }
+
+        @Override
+        protected long lease(String key, long step) {
+            LockSupport.parkNanos(REDIS_RTT_NANOS);
+            return counters.computeIfAbsent(key, k -> new AtomicLong()).addAndGet(step);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RedisIdWorkerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,138 @@
+package com.hmdp.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodecs;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.RawCacheValue;
+import com.hmdp.utils.RedisData;
+import com.hmdp.utils.ResultBodyWriter;
+import com.hmdp.utils.WireCacheCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比店铺详情缓存命中时生成响应的开销：解码为Shop再序列化Result，与直接拼接缓存中的wire数据
+ * 响应写入丢弃数据的输出流，配合GC profiler观察每次请求分配的字节数（gc.alloc.rate.norm）
+ * <p>
+ * 运行方式：在IDE中直接运行main方法，或者
+ * mvn test-compile exec:java -Dexec.mainClass=com.hmdp.benchmark.ShopResponseBenchmark -Dexec.classpathScope=test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShopResponseBenchmark {
+
+    private static final String KEY = "cache:shop:1";
+
+    private ObjectMapper objectMapper;
+    private CacheCodecs jsonCodecs;
+    private CacheCodecs wireCodecs;
+    private ResultBodyWriter resultBodyWriter;
+    private byte[] jsonBytes;
+    private byte[] wireBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        // 与Spring Boot按application.yaml创建的ObjectMapper配置一致
+        objectMapper = Jackson2ObjectMapperBuilder.json().serializationInclusion(JsonInclude.Include.NON_NULL).build();
+        jsonCodecs = codecs("");
+        wireCodecs = codecs("cache:shop:=wire");
+        resultBodyWriter = new ResultBodyWriter(objectMapper);
+        Shop shop = CacheCodecBenchmark.sampleShop();
+        LocalDateTime expireTime = LocalDateTime.now().plusMinutes(30);
+        jsonBytes = jsonCodecs.encode(KEY, shop, expireTime);
+        wireBytes = wireCodecs.encode(KEY, shop, expireTime);
+    }
+
+    /**
+     * 原来的路径：JSON缓存值反序列化为RedisData和Shop，判断过期后序列化Result
+     */
+    @Benchmark
+    public void jsonObjectPath(Blackhole blackhole) throws IOException {
+        writeObject(jsonCodecs.decode(jsonBytes, Shop.class, true), blackhole);
+    }
+
+    /**
+     * wire格式的缓存值同样先反序列化再序列化，即queryById的回退路径
+     */
+    @Benchmark
+    public void wireObjectPath(Blackhole blackhole) throws IOException {
+        writeObject(wireCodecs.decode(wireBytes, Shop.class, true), blackhole);
+    }
+
+    /**
+     * 只解析头部，把数据原样拼接到Result中
+     */
+    @Benchmark
+    public void wireRawPath(Blackhole blackhole) throws IOException {
+        RawCacheValue raw = wireCodecs.readRaw(wireBytes, WireCacheCodec.ID);
+        blackhole.consume(raw.getExpireTime().isAfter(LocalDateTime.now()));
+        resultBodyWriter.write(new BlackholeOutputStream(blackhole), raw);
+    }
+
+    private void writeObject(RedisData redisData, Blackhole blackhole) throws IOException {
+        blackhole.consume(redisData.getExpireTime().isAfter(LocalDateTime.now()));
+        objectMapper.writeValue(new BlackholeOutputStream(blackhole), Result.ok(redisData.getData()));
+    }
+
+    private CacheCodecs codecs(String config) {
+        return new CacheCodecs(Arrays.asList(new JsonCacheCodec(), new BinaryCacheCodec(128),
+                new WireCacheCodec(objectMapper)), config);
+    }
+
+    /**
+     * 模拟响应输出流，写入的数据交给Blackhole
+     */
+    private static class BlackholeOutputStream extends OutputStream {
+        private final Blackhole blackhole;
+
+        BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+            blackhole.consume(len);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ShopResponseBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
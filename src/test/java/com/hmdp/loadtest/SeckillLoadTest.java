@@ -0,0 +1,375 @@
+package com.hmdp.loadtest;
+
+import cn.hutool.core.util.StrUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.HmDianPingApplication;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.Voucher;
+import com.hmdp.utils.LocalStockPool;
+import com.hmdp.utils.VoucherOrderWriter;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀压测：在本机启动内嵌redis和h2（MySQL兼容模式）代替真实环境，启动整个应用，
+ * 由大量模拟用户并发请求 /voucher-order/seckill/{id}，等待订单全部落库后输出吞吐量、延迟分布，
+ * 并检查不超卖、一人一单、redis与数据库库存一致、下单成功的订单全部落库
+ * <p>
+ * 运行方式：在IDE中直接运行main方法，或者
+ * mvn test-compile exec:java -Dexec.mainClass=com.hmdp.loadtest.SeckillLoadTest -Dexec.classpathScope=test
+ * <p>
+ * 参数（系统属性）：
+ * <ul>
+ *     <li>users：模拟的用户数，默认5000</li>
+ *     <li>attempts：每个用户的请求次数，大于1时检查重复下单，默认2</li>
+ *     <li>stock：秒杀库存，默认1000</li>
+ *     <li>threads：并发请求的线程数，默认200</li>
+ *     <li>localStock：是否开启本地库存令牌，默认false</li>
+ *     <li>drainTimeoutSeconds：等待订单落库的最长时间，默认60</li>
+ * </ul>
+ * 任意一项检查失败时进程以1退出
+ */
+public class SeckillLoadTest {
+
+    private static final String TOKEN_PREFIX = "loadtest-";
+
+    private final int users = Integer.getInteger("users", 5000);
+    private final int attempts = Integer.getInteger("attempts", 2);
+    private final int stock = Integer.getInteger("stock", 1000);
+    private final int threads = Integer.getInteger("threads", 200);
+    private final boolean localStock = Boolean.getBoolean("localStock");
+    private final long drainTimeoutSeconds = Long.getLong("drainTimeoutSeconds", 60);
+
+    /**
+     * 请求延迟，单位微秒，最大记录60秒
+     */
+    private final Histogram latency = new ConcurrentHistogram(TimeUnit.SECONDS.toMicros(60), 3);
+    /**
+     * 下单成功返回的订单id -> 用户id
+     */
+    private final Map<Long, Long> accepted = new ConcurrentHashMap<>();
+    /**
+     * 失败提示 -> 次数
+     */
+    private final Map<String, LongAdder> rejected = new ConcurrentHashMap<>();
+    private final LongAdder errors = new LongAdder();
+
+    private ConfigurableApplicationContext context;
+    private ObjectMapper objectMapper;
+    private String baseUrl;
+
+    public static void main(String[] args) throws Exception {
+        System.exit(new SeckillLoadTest().run() ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        int redisPort = freePort();
+        RedisServer redis = RedisServer.newRedisServer()
+                .bind("127.0.0.1")
+                .port(redisPort)
+                .setting("save \"\"")
+                .setting("appendonly no")
+                .build();
+        redis.start();
+        try {
+            context = startApplication(redisPort);
+            objectMapper = context.getBean(ObjectMapper.class);
+            baseUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port");
+            // keep-alive连接池默认每个地址只保留5个连接
+            System.setProperty("http.maxConnections", String.valueOf(threads));
+
+            long voucherId = createVoucher();
+            login();
+            long elapsedNanos = fire(voucherId);
+            long drainNanos = awaitDrain(voucherId);
+            return report(voucherId, elapsedNanos, drainNanos);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+            redis.stop();
+        }
+    }
+
+    private ConfigurableApplicationContext startApplication(int redisPort) {
+        // 以命令行参数传入，覆盖application.yaml中的配置
+        Map<String, Object> props = new LinkedHashMap<>();
+        props.put("server.port", 0);
+        props.put("management.server.port", 0);
+        props.put("spring.datasource.driver-class-name", "org.h2.Driver");
+        props.put("spring.datasource.url", "jdbc:h2:mem:hmdp;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        props.put("spring.datasource.username", "sa");
+        props.put("spring.datasource.password", "");
+        props.put("spring.datasource.schema", "classpath:loadtest/schema.sql");
+        props.put("spring.datasource.initialization-mode", "always");
+        props.put("spring.redis.host", "127.0.0.1");
+        props.put("spring.redis.port", redisPort);
+        props.put("spring.redis.password", "");
+        props.put("logging.level.com.hmdp", "info");
+        props.put("hmdp.seckill.local-stock.enabled", localStock);
+        String[] args = props.entrySet().stream()
+                .map(e -> "--" + e.getKey() + "=" + e.getValue())
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(HmDianPingApplication.class).run(args);
+    }
+
+    /**
+     * 通过接口创建秒杀券，与线上一样在事务提交后预热redis
+     */
+    private long createVoucher() throws IOException {
+        LocalDateTime now = LocalDateTime.now();
+        Voucher voucher = new Voucher()
+                .setShopId(1L)
+                .setTitle("压测秒杀券")
+                .setPayValue(100L)
+                .setActualValue(1000L)
+                .setType(1)
+                .setStock(stock)
+                .setBeginTime(now.minusMinutes(1))
+                .setEndTime(now.plusHours(1));
+        Result result = post("/voucher/seckill", null, objectMapper.writeValueAsBytes(voucher));
+        if (result == null || !Boolean.TRUE.equals(result.getSuccess())) {
+            throw new IllegalStateException("创建秒杀券失败：" + result);
+        }
+        return ((Number) result.getData()).longValue();
+    }
+
+    /**
+     * 直接在redis中写入登录信息，跳过短信验证码登录
+     */
+    private void login() {
+        StringRedisTemplate stringRedisTemplate = context.getBean(StringRedisTemplate.class);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 1; i <= users; i++) {
+                Map<byte[], byte[]> user = new HashMap<>();
+                user.put(bytes("id"), bytes(String.valueOf(i)));
+                user.put(bytes("nickName"), bytes("user_" + i));
+                user.put(bytes("icon"), bytes(""));
+                connection.hMSet(bytes(LOGIN_USER_KEY + TOKEN_PREFIX + i), user);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 所有请求打乱顺序后由线程池同时开始发送，同一用户的重复请求会与其它用户的请求交错
+     *
+     * @return 从开始发送到全部返回的耗时
+     */
+    private long fire(long voucherId) throws InterruptedException {
+        List<Integer> requests = new ArrayList<>(users * attempts);
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            for (int i = 1; i <= users; i++) {
+                requests.add(i);
+            }
+        }
+        Collections.shuffle(requests);
+
+        String path = "/voucher-order/seckill/" + voucherId;
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    int index;
+                    while ((index = next.getAndIncrement()) < requests.size()) {
+                        seckill(path, requests.get(index));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+        return elapsed;
+    }
+
+    private void seckill(String path, int userId) {
+        long begin = System.nanoTime();
+        Result result;
+        try {
+            result = post(path, TOKEN_PREFIX + userId, null);
+        } catch (IOException e) {
+            result = null;
+        }
+        latency.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - begin),
+                latency.getHighestTrackableValue()));
+        if (result == null) {
+            errors.increment();
+        } else if (Boolean.TRUE.equals(result.getSuccess())) {
+            accepted.put(((Number) result.getData()).longValue(), (long) userId);
+        } else {
+            rejected.computeIfAbsent(String.valueOf(result.getErrorMsg()), k -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * 等待消息队列中的订单全部写入数据库
+     *
+     * @return 从请求全部返回到订单全部落库的耗时
+     */
+    private long awaitDrain(long voucherId) throws InterruptedException {
+        VoucherOrderWriter writer = context.getBean(VoucherOrderWriter.class);
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        long begin = System.nanoTime();
+        long deadline = begin + TimeUnit.SECONDS.toNanos(drainTimeoutSeconds);
+        while (System.nanoTime() < deadline) {
+            Integer written = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM tb_voucher_order WHERE voucher_id = ?", Integer.class, voucherId);
+            Object pending = writer.stats().get("pending");
+            if (written != null && written >= accepted.size()
+                    && (pending == null || ((Number) pending).longValue() == 0)) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+        return System.nanoTime() - begin;
+    }
+
+    private boolean report(long voucherId, long elapsedNanos, long drainNanos) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        StringRedisTemplate stringRedisTemplate = context.getBean(StringRedisTemplate.class);
+
+        List<Long> orderIds = jdbcTemplate.queryForList(
+                "SELECT id FROM tb_voucher_order WHERE voucher_id = ?", Long.class, voucherId);
+        Integer duplicatedBuyers = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM (SELECT user_id FROM tb_voucher_order WHERE voucher_id = ? "
+                        + "GROUP BY user_id HAVING COUNT(*) > 1) t", Integer.class, voucherId);
+        Integer dbStock = jdbcTemplate.queryForObject(
+                "SELECT stock FROM tb_seckill_voucher WHERE voucher_id = ?", Integer.class, voucherId);
+        String redisStock = stringRedisTemplate.opsForValue().get(SECKILL_STOCK_KEY + voucherId);
+        Long buyers = stringRedisTemplate.opsForSet().size(SECKILL_ORDER_KEY + voucherId);
+        // 开启本地库存令牌时，各节点租用后尚未售出的令牌既不在redis库存中也没有对应的订单
+        int leased = ((Number) context.getBean(LocalStockPool.class).stats().get("tokens")).intValue();
+
+        int requests = users * attempts;
+        double seconds = elapsedNanos / 1e9;
+        long redisLeft = StrUtil.isBlank(redisStock) ? -1 : Long.parseLong(redisStock);
+        int sold = orderIds.size();
+
+        System.out.println();
+        System.out.println("========== 秒杀压测结果 ==========");
+        System.out.printf("用户数：%d，每人请求：%d次，库存：%d，并发线程：%d，本地库存令牌：%s%n",
+                users, attempts, stock, threads, localStock);
+        System.out.printf("请求总数：%d，耗时：%.2fs，吞吐量：%.0f req/s%n", requests, seconds, requests / seconds);
+        System.out.printf("下单成功：%d，连接错误：%d%n", accepted.size(), errors.sum());
+        rejected.forEach((msg, count) -> System.out.printf("下单失败[%s]：%d%n", msg, count.sum()));
+        System.out.printf("延迟(ms)：mean=%.2f p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n",
+                latency.getMean() / 1000,
+                latency.getValueAtPercentile(50) / 1000.0,
+                latency.getValueAtPercentile(90) / 1000.0,
+                latency.getValueAtPercentile(99) / 1000.0,
+                latency.getValueAtPercentile(99.9) / 1000.0,
+                latency.getMaxValue() / 1000.0);
+        System.out.printf("订单落库：%d，等待落库耗时：%.2fs%n", sold, drainNanos / 1e9);
+        System.out.println("写入统计：" + context.getBean(VoucherOrderWriter.class).stats());
+
+        Map<String, Boolean> checks = new LinkedHashMap<>();
+        checks.put("不超卖：订单数 <= 库存", sold <= stock);
+        checks.put("一人一单：没有用户重复下单", duplicatedBuyers != null && duplicatedBuyers == 0);
+        checks.put("数据库库存 = 初始库存 - 订单数", dbStock != null && dbStock == stock - sold);
+        checks.put("redis库存 + 未售令牌 + 下单用户数 = 初始库存",
+                buyers != null && redisLeft + leased + buyers == stock);
+        checks.put("下单成功的订单全部落库", new HashSet<>(orderIds).equals(accepted.keySet()));
+        checks.put("请求没有连接错误", errors.sum() == 0);
+        if (users >= stock && !localStock) {
+            checks.put("库存全部售出", sold == stock);
+        }
+
+        boolean passed = true;
+        for (Map.Entry<String, Boolean> check : checks.entrySet()) {
+            System.out.printf("[%s] %s%n", check.getValue() ? "PASS" : "FAIL", check.getKey());
+            passed &= check.getValue();
+        }
+        System.out.println("==================================");
+        return passed;
+    }
+
+    private Result post(String path, String token, byte[] body) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "application/json");
+        if (token != null) {
+            conn.setRequestProperty("authorization", token);
+        }
+        byte[] payload = body == null ? new byte[0] : body;
+        conn.setFixedLengthStreamingMode(payload.length);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(payload);
+        }
+        if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            // 读完错误响应，连接才能被复用
+            try (InputStream err = conn.getErrorStream()) {
+                if (err != null) {
+                    readAll(err);
+                }
+            }
+            return null;
+        }
+        try (InputStream in = conn.getInputStream()) {
+            return objectMapper.readValue(readAll(in), Result.class);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
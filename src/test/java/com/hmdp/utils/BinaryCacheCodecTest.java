@@ -0,0 +1,121 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCacheCodecTest {
+
+    private static final String KEY = "cache:shop:1";
+
+    private final BinaryCacheCodec codec = new BinaryCacheCodec(128);
+    private final CacheCodecs codecs = new CacheCodecs(
+            Arrays.asList(new JsonCacheCodec(), codec), "cache:shop:=binary");
+
+    @Test
+    void roundTripsAllFieldTypes() {
+        Shop shop = sampleShop();
+        byte[] bytes = codec.encode(shop);
+
+        assertEquals(shop, codec.decode(bytes, 0, bytes.length, Shop.class));
+    }
+
+    @Test
+    void roundTripsNullFields() {
+        Shop shop = new Shop().setId(1L).setName("103茶餐厅");
+        byte[] bytes = codec.encode(shop);
+
+        Shop decoded = codec.decode(bytes, 0, bytes.length, Shop.class);
+        assertEquals(shop, decoded);
+        assertNull(decoded.getCreateTime());
+    }
+
+    @Test
+    void compressesLongStrings() {
+        char[] chars = new char[2000];
+        Arrays.fill(chars, '茶');
+        Shop shop = sampleShop().setImages(new String(chars));
+        byte[] bytes = codec.encode(shop);
+
+        assertTrue(bytes.length < 2000);
+        assertEquals(shop, codec.decode(bytes, 0, bytes.length, Shop.class));
+    }
+
+    @Test
+    void roundTripsThroughHeaderWithLogicalExpire() {
+        Shop shop = sampleShop();
+        LocalDateTime expireTime = LocalDateTime.of(2030, 1, 1, 12, 0, 0);
+        byte[] bytes = codecs.encode(KEY, shop, expireTime, 35L);
+
+        assertEquals(CacheCodecs.MAGIC, bytes[0]);
+        RedisData redisData = codecs.decode(bytes, Shop.class, true);
+        assertEquals(shop, redisData.getData());
+        assertEquals(expireTime, redisData.getExpireTime());
+        assertEquals(35L, redisData.getRebuildCost());
+    }
+
+    @Test
+    void treatsVersionMismatchAsMiss() {
+        byte[] bytes = codecs.encode(KEY, sampleShop());
+        bytes[2] = (byte) (codec.version() + 1);
+
+        assertNull(codecs.decode(bytes, Shop.class, false));
+    }
+
+    @Test
+    void treatsUnknownCodecAsMiss() {
+        byte[] bytes = codecs.encode(KEY, sampleShop());
+        bytes[1] = 99;
+
+        assertNull(codecs.decode(bytes, Shop.class, false));
+    }
+
+    @Test
+    void treatsSchemaMismatchAsMiss() {
+        // 类结构不同，哈希不一致
+        byte[] bytes = codec.encode(sampleShop());
+
+        assertNull(codec.decode(bytes, 0, bytes.length, Voucher.class));
+    }
+
+    @Test
+    void treatsTruncatedBytesAsMiss() {
+        byte[] bytes = codecs.encode(KEY, sampleShop(), LocalDateTime.of(2030, 1, 1, 12, 0, 0), 35L);
+
+        for (int length = 1; length < bytes.length; length++) {
+            assertNull(codecs.decode(Arrays.copyOf(bytes, length), Shop.class, true));
+        }
+    }
+
+    @Test
+    void readsLegacyJsonAfterSwitchingCodec() {
+        Shop shop = sampleShop();
+        byte[] json = new CacheCodecs(Arrays.asList(new JsonCacheCodec(), codec), "").encode(KEY, shop);
+
+        assertEquals(shop, codecs.decode(json, Shop.class, false).getData());
+    }
+
+    static Shop sampleShop() {
+        return new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39, 123_000_000))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+}
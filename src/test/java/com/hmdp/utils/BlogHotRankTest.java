@@ -0,0 +1,104 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlogHotRankTest {
+
+    private static EmbeddedRedis redis;
+
+    private StringRedisTemplate template;
+    private BlogHotRank blogHotRank;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        redis.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        template = redis.template();
+        blogHotRank = new BlogHotRank(template, null, null, new SimpleMeterRegistry(),
+                "exponential", 86400000, 1.8, 1, 2, 10000, 500);
+    }
+
+    @Test
+    void firstPageCountsTiesAtTheLastScore() {
+        score(1L, 9);
+        score(2L, 8);
+        score(3L, 8);
+        score(4L, 7);
+
+        BlogHotRank.Page page = blogHotRank.page(null, 0, 3);
+        assertEquals(3, page.getIds().size());
+        assertEquals(1L, page.getIds().get(0));
+        assertEquals(8, page.getMinScore());
+        assertEquals(2, page.getOffset());
+
+        page = blogHotRank.page(page.getMinScore(), page.getOffset(), 3);
+        assertEquals(Collections.singletonList(4L), page.getIds());
+        assertEquals(7, page.getMinScore());
+        assertEquals(1, page.getOffset());
+    }
+
+    @Test
+    void pageWhollyTiedWithMaxAccumulatesOffset() {
+        // 7篇分数相同，每页2篇，整页都等于max时要加上已跳过的篇数
+        score(1L, 10);
+        for (long id = 2; id <= 8; id++) {
+            score(id, 5);
+        }
+        score(9L, 1);
+
+        List<Long> seen = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+        Double max = null;
+        int offset = 0;
+        while (true) {
+            BlogHotRank.Page page = blogHotRank.page(max, offset, 2);
+            if (page.getIds().isEmpty()) {
+                break;
+            }
+            seen.addAll(page.getIds());
+            offsets.add(page.getOffset());
+            max = page.getMinScore();
+            offset = page.getOffset();
+        }
+
+        assertEquals(9, seen.size());
+        assertEquals(9, seen.stream().distinct().count());
+        assertEquals(1L, seen.get(0));
+        assertEquals(9L, seen.get(8));
+        // 第一页[10,5]，之后[5,5]三页，再[5,1]
+        assertEquals(Arrays.asList(1, 3, 5, 7, 1), offsets);
+    }
+
+    @Test
+    void emptyRankReturnsEmptyPage() {
+        BlogHotRank.Page page = blogHotRank.page(null, 0, 10);
+        assertTrue(page.getIds().isEmpty());
+    }
+
+    private void score(Long blogId, double score) {
+        template.opsForZSet().add(BLOG_HOT_KEY, blogId.toString(), score);
+    }
+}
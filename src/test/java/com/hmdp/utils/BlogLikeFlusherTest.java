@@ -0,0 +1,186 @@
+package com.hmdp.utils;
+
+import com.hmdp.mapper.BlogMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_DELTA_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_FLUSHING_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlogLikeFlusherTest {
+
+    private static final DefaultRedisScript<Long> LIKE_SCRIPT;
+
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("blog_like.lua"));
+        LIKE_SCRIPT.setResultType(Long.class);
+    }
+
+    private static EmbeddedRedis redis;
+
+    /**
+     * 代替tb_blog.liked，笔记id -> 点赞数
+     */
+    private final Map<Long, Long> liked = new HashMap<>();
+    private final AtomicInteger updates = new AtomicInteger();
+    /**
+     * 第几次UPDATE抛出异常，0表示不抛出
+     */
+    private int failOnUpdate;
+    /**
+     * 每次UPDATE之前执行，用于模拟写回期间的点赞
+     */
+    private Runnable duringUpdate = () -> {
+    };
+
+    private StringRedisTemplate template;
+    private RedisLock redisLock;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        redis.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        template = redis.template();
+        redisLock = new RedisLock(template, new SimpleMeterRegistry(), 10000, 50);
+    }
+
+    @AfterEach
+    void tearDown() {
+        redisLock.shutdown();
+    }
+
+    @Test
+    void likeScriptTogglesAndRecordsDelta() {
+        assertEquals(1L, like(1L, 100L));
+        assertEquals(1L, like(1L, 101L));
+        assertEquals(0L, like(1L, 100L));
+
+        assertEquals("1", template.opsForHash().get(BLOG_LIKED_DELTA_KEY, "1"));
+        assertEquals(1L, template.opsForZSet().zCard(BLOG_LIKED_KEY + 1));
+    }
+
+    @Test
+    void flushWritesDeltasAndRemovesBothHashes() {
+        like(1L, 100L);
+        like(1L, 101L);
+        like(2L, 100L);
+        // 点赞后又取消，增量为0，不写回
+        like(3L, 100L);
+        like(3L, 100L);
+
+        newFlusher(500).flush();
+
+        assertEquals(2L, liked.get(1L));
+        assertEquals(1L, liked.get(2L));
+        assertFalse(liked.containsKey(3L));
+        assertEquals(1, updates.get());
+        assertFalse(template.hasKey(BLOG_LIKED_DELTA_KEY));
+        assertFalse(template.hasKey(BLOG_LIKED_FLUSHING_KEY));
+    }
+
+    @Test
+    void likesDuringFlushAreKeptForNextFlush() {
+        like(1L, 100L);
+        // 改名之后的点赞记录到新的HASH中
+        duringUpdate = () -> like(1L, 101L);
+        BlogLikeFlusher flusher = newFlusher(500);
+
+        flusher.flush();
+        assertEquals(1L, liked.get(1L));
+        assertEquals("1", template.opsForHash().get(BLOG_LIKED_DELTA_KEY, "1"));
+
+        duringUpdate = () -> {
+        };
+        flusher.flush();
+        assertEquals(2L, liked.get(1L));
+        assertFalse(template.hasKey(BLOG_LIKED_DELTA_KEY));
+    }
+
+    @Test
+    void leftoverFlushingHashIsRetriedWithoutReapplyingCommittedBatches() {
+        like(1L, 100L);
+        like(2L, 100L);
+        like(3L, 100L);
+        failOnUpdate = 2;
+        BlogLikeFlusher flusher = newFlusher(1);
+
+        flusher.flush();
+        assertEquals(1, flusher.failedCount());
+        assertEquals(1, liked.size());
+        // 已提交的一批已从FLUSHING_KEY中删除，剩下两篇
+        assertEquals(2L, template.opsForHash().size(BLOG_LIKED_FLUSHING_KEY));
+
+        // 失败之后的点赞进入新的增量，下次先写回上次剩下的
+        like(1L, 101L);
+        failOnUpdate = 0;
+        flusher.flush();
+        assertEquals(1L, liked.get(1L));
+        assertEquals(1L, liked.get(2L));
+        assertEquals(1L, liked.get(3L));
+        assertFalse(template.hasKey(BLOG_LIKED_FLUSHING_KEY));
+        assertEquals("1", template.opsForHash().get(BLOG_LIKED_DELTA_KEY, "1"));
+
+        flusher.flush();
+        assertEquals(2L, liked.get(1L));
+        assertEquals(1L, liked.get(2L));
+        assertEquals(1L, liked.get(3L));
+        assertFalse(template.hasKey(BLOG_LIKED_DELTA_KEY));
+    }
+
+    private Long like(Long blogId, Long userId) {
+        return template.execute(LIKE_SCRIPT, Arrays.asList(BLOG_LIKED_KEY + blogId, BLOG_LIKED_DELTA_KEY),
+                userId.toString(), blogId.toString(), String.valueOf(System.currentTimeMillis()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private BlogLikeFlusher newFlusher(int batchSize) {
+        BlogMapper blogMapper = (BlogMapper) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{BlogMapper.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("increaseLikedBatch")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    duringUpdate.run();
+                    if (updates.incrementAndGet() == failOnUpdate) {
+                        throw new IllegalStateException("模拟写入失败");
+                    }
+                    ((Map<Long, Long>) args[0]).forEach((id, delta) -> liked.merge(id, delta, Long::sum));
+                    return ((Map<Long, Long>) args[0]).size();
+                });
+        TransactionTemplate transactionTemplate = new TransactionTemplate() {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) {
+                return action.doInTransaction(null);
+            }
+        };
+        return new BlogLikeFlusher(template, blogMapper, transactionTemplate, redisLock,
+                new SimpleMeterRegistry(), batchSize);
+    }
+}
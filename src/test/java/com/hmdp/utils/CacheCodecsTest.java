@@ -0,0 +1,41 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheCodecsTest {
+
+    private static final String KEY = "cache:shop:1";
+
+    private final CacheCodecs codecs = new CacheCodecs(Collections.singletonList(new JsonCacheCodec()), "");
+
+    @Test
+    void roundTripsLogicalExpireJson() {
+        Shop shop = BinaryCacheCodecTest.sampleShop();
+        LocalDateTime expireTime = LocalDateTime.of(2030, 1, 1, 12, 0, 0);
+        byte[] bytes = codecs.encode(KEY, shop, expireTime);
+
+        RedisData redisData = codecs.decode(bytes, Shop.class, true);
+        assertEquals(shop, redisData.getData());
+        assertEquals(expireTime, redisData.getExpireTime());
+    }
+
+    @Test
+    void treatsPlainJsonAsMissInLogicalMode() {
+        // 改为逻辑过期之前写入的缓存值没有expireTime
+        byte[] bytes = codecs.encode(KEY, BinaryCacheCodecTest.sampleShop());
+
+        assertNull(codecs.decode(bytes, Shop.class, true));
+    }
+
+    @Test
+    void rejectsConfigEntryWithoutPrefix() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new CacheCodecs(Collections.singletonList(new JsonCacheCodec()), "json"));
+    }
+}
@@ -0,0 +1,55 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * 测试用的内嵌redis，用于需要执行lua脚本的测试
+ */
+class EmbeddedRedis {
+
+    private final RedisServer server;
+    private final LettuceConnectionFactory connectionFactory;
+    private final StringRedisTemplate template;
+
+    EmbeddedRedis() throws IOException {
+        int port = freePort();
+        this.server = RedisServer.newRedisServer()
+                .bind("127.0.0.1")
+                .port(port)
+                .setting("save \"\"")
+                .setting("appendonly no")
+                .build();
+        server.start();
+        this.connectionFactory = new LettuceConnectionFactory("127.0.0.1", port);
+        connectionFactory.afterPropertiesSet();
+        this.template = new StringRedisTemplate(connectionFactory);
+    }
+
+    StringRedisTemplate template() {
+        return template;
+    }
+
+    void flushAll() {
+        template.execute((RedisCallback<Object>) connection -> {
+            connection.flushAll();
+            return null;
+        });
+    }
+
+    void stop() throws IOException {
+        connectionFactory.destroy();
+        server.stop();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
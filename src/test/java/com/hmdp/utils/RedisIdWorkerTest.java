@@ -0,0 +1,111 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisIdWorkerTest {
+
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 5000;
+
+    /**
+     * 代替redis的计数器，多个节点共享
+     */
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final List<RedisIdWorker> workers = new ArrayList<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+        workers.forEach(RedisIdWorker::shutdown);
+    }
+
+    @Test
+    void idsAreUniqueAcrossSegments() throws Exception {
+        RedisIdWorker worker = newWorker(100);
+        Set<Long> ids = generate(worker, worker);
+
+        assertEquals(THREADS * IDS_PER_THREAD, ids.size());
+        // 每个号段100个，至少租用了400次
+        assertTrue((Long) worker.stats().get("leased") >= THREADS * IDS_PER_THREAD / 100);
+    }
+
+    @Test
+    void idsAreUniqueAcrossNodes() throws Exception {
+        // 两个节点共享计数器，各自租用不相交的号段
+        RedisIdWorker node1 = newWorker(50);
+        RedisIdWorker node2 = newWorker(50);
+        Set<Long> ids = generate(node1, node2);
+
+        assertEquals(THREADS * IDS_PER_THREAD, ids.size());
+    }
+
+    @Test
+    void idsIncreaseWithinThread() {
+        RedisIdWorker worker = newWorker(10);
+        long last = 0;
+        for (int i = 0; i < 1000; i++) {
+            long id = worker.nextId("order");
+            assertTrue(id > last);
+            last = id;
+        }
+    }
+
+    @Test
+    void keyPrefixesHaveSeparateSequences() {
+        RedisIdWorker worker = newWorker(10);
+        worker.nextId("order");
+        worker.nextId("shop");
+
+        assertEquals(2, counters.size());
+        counters.values().forEach(counter -> assertEquals(10, counter.get()));
+    }
+
+    private RedisIdWorker newWorker(int segmentSize) {
+        RedisIdWorker worker = new RedisIdWorker(null, segmentSize, 0.5, 5000) {
+            @Override
+            protected long lease(String key, long step) {
+                return counters.computeIfAbsent(key, k -> new AtomicLong()).addAndGet(step);
+            }
+        };
+        workers.add(worker);
+        return worker;
+    }
+
+    /**
+     * 一半线程使用worker1，一半使用worker2，返回生成的所有id
+     */
+    private Set<Long> generate(RedisIdWorker worker1, RedisIdWorker worker2) throws Exception {
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            RedisIdWorker worker = i % 2 == 0 ? worker1 : worker2;
+            futures.add(executor.submit(() -> {
+                List<Long> ids = new ArrayList<>(IDS_PER_THREAD);
+                for (int j = 0; j < IDS_PER_THREAD; j++) {
+                    ids.add(worker.nextId("order"));
+                }
+                return ids;
+            }));
+        }
+        Set<Long> ids = new HashSet<>();
+        for (Future<List<Long>> future : futures) {
+            ids.addAll(future.get(30, TimeUnit.SECONDS));
+        }
+        return ids;
+    }
+}
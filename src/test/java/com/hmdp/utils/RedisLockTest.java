@@ -0,0 +1,165 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisLockTest {
+
+    private static final String KEY = "lock:test";
+
+    /**
+     * 代替redis，key到令牌
+     */
+    private final Map<String, String> store = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    /**
+     * 设置后setIfAbsent在该key上阻塞，直到latch打开
+     */
+    private volatile String blockedKey;
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final RedisLock redisLock = newLock(10000);
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        executor.shutdownNow();
+        redisLock.shutdown();
+    }
+
+    @Test
+    void reentersAndReleasesAfterLastUnlock() {
+        RedisLock.Lease lease = redisLock.tryLock(KEY);
+        assertNotNull(lease);
+        assertSame(lease, redisLock.tryLock(KEY));
+        assertEquals(1L, redisLock.stats().get("reentered"));
+
+        lease.unlock();
+        assertTrue(lease.isHeld());
+        assertNotNull(store.get(KEY));
+
+        lease.unlock();
+        assertFalse(lease.isHeld());
+        assertNull(store.get(KEY));
+        assertEquals(0, redisLock.heldCount());
+        assertThrows(IllegalStateException.class, lease::unlock);
+    }
+
+    @Test
+    void otherThreadCannotEnterHeldLock() throws Exception {
+        RedisLock.Lease lease = redisLock.tryLock(KEY);
+        assertNotNull(lease);
+
+        assertNull(executor.submit(() -> redisLock.tryLock(KEY)).get(5, TimeUnit.SECONDS));
+        assertEquals(1L, redisLock.stats().get("localRejected"));
+        lease.unlock();
+    }
+
+    @Test
+    void unlockDoesNotDeleteLockTakenByOtherNode() {
+        RedisLock.Lease lease = redisLock.tryLock(KEY);
+        assertNotNull(lease);
+        // 租期已过，锁被其它节点获取
+        store.put(KEY, "other");
+
+        lease.unlock();
+        assertEquals("other", store.get(KEY));
+        assertEquals(1L, redisLock.lostCount());
+        assertEquals(0, redisLock.heldCount());
+    }
+
+    @Test
+    void renewFailureMarksLeaseLost() throws Exception {
+        RedisLock shortLease = newLock(30);
+        try {
+            RedisLock.Lease lease = shortLease.tryLock(KEY);
+            assertNotNull(lease);
+            store.put(KEY, "other");
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (lease.isHeld() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertFalse(lease.isHeld());
+            assertEquals(1L, shortLease.lostCount());
+            assertEquals(0, shortLease.heldCount());
+
+            lease.unlock();
+            assertEquals("other", store.get(KEY));
+        } finally {
+            shortLease.shutdown();
+        }
+    }
+
+    @Test
+    void detachedLeaseIsReleasedByAnotherThread() throws Exception {
+        RedisLock.Lease lease = redisLock.tryLock(KEY);
+        assertNotNull(lease);
+        lease.detach();
+        // 交出之后当前线程不能再重入
+        assertNull(redisLock.tryLock(KEY));
+
+        executor.submit(lease::unlock).get(5, TimeUnit.SECONDS);
+        assertNull(store.get(KEY));
+        assertEquals(0, redisLock.heldCount());
+    }
+
+    @Test
+    void acquiringOneKeyDoesNotBlockOtherKeys() throws Exception {
+        blockedKey = "lock:a";
+        Future<RedisLock.Lease> first = executor.submit(() -> redisLock.tryLock("lock:a"));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        // 同一个key正在竞争时本地拒绝，其它key照常访问redis
+        assertNull(redisLock.tryLock("lock:a"));
+        RedisLock.Lease other = redisLock.tryLock("lock:b");
+        assertNotNull(other);
+
+        release.countDown();
+        RedisLock.Lease lease = first.get(5, TimeUnit.SECONDS);
+        assertNotNull(lease);
+        other.unlock();
+        executor.submit(lease::unlock).get(5, TimeUnit.SECONDS);
+        assertTrue(store.isEmpty());
+    }
+
+    private RedisLock newLock(long leaseMillis) {
+        return new RedisLock(null, new SimpleMeterRegistry(), leaseMillis, 10) {
+            @Override
+            protected boolean setIfAbsent(String key, String token) {
+                if (key.equals(blockedKey)) {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return store.putIfAbsent(key, token) == null;
+            }
+
+            @Override
+            protected boolean renewIfOwned(String key, String token) {
+                return token.equals(store.get(key));
+            }
+
+            @Override
+            protected boolean deleteIfOwned(String key, String token) {
+                return store.remove(key, token);
+            }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private static final int THREADS = 8;
+
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void coalescesConcurrentCalls() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> singleFlight.execute("shop:1", () -> {
+                loads.incrementAndGet();
+                await(release);
+                return "value";
+            })));
+        }
+        // 等所有调用都进入后再放行加载
+        waitForWaiters(THREADS - 1);
+        release.countDown();
+
+        for (Future<String> future : futures) {
+            assertEquals("value", future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(0, singleFlight.inFlight());
+        assertEquals((long) THREADS - 1, singleFlight.stats().get("coalescedTotal"));
+    }
+
+    @Test
+    void propagatesExceptionToAllWaiters() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> singleFlight.execute("shop:1", () -> {
+                await(release);
+                throw new IllegalStateException("db down");
+            })));
+        }
+        waitForWaiters(THREADS - 1);
+        release.countDown();
+
+        for (Future<String> future : futures) {
+            Exception e = assertThrows(Exception.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals("db down", e.getCause().getMessage());
+        }
+        // 失败后不保留结果，下次调用重新加载
+        assertEquals(0, singleFlight.inFlight());
+        assertEquals("retry", singleFlight.execute("shop:1", () -> "retry"));
+    }
+
+    @Test
+    void doesNotCoalesceDifferentKeys() {
+        assertEquals("a", singleFlight.execute("shop:1", () -> "a"));
+        assertEquals("b", singleFlight.execute("shop:2", () -> "b"));
+        assertEquals(0L, singleFlight.stats().get("coalescedTotal"));
+    }
+
+    private void waitForWaiters(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (System.currentTimeMillis() < deadline) {
+            Object waiters = ((Map<?, ?>) singleFlight.stats().get("waiters")).get("shop:1");
+            if (waiters != null && (Integer) waiters == expected) {
+                return;
+            }
+            Thread.sleep(1);
+        }
+        fail("等待者数量没有达到" + expected);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private static final long START = 1_000_000L;
+
+    @Test
+    void expiresTasksInTheirTick() {
+        TimingWheel wheel = new TimingWheel(10, 8, START);
+        wheel.add(1, START + 25);
+        wheel.add(2, START + 55);
+
+        assertEquals(Collections.emptyList(), wheel.advance(START + 20));
+        assertEquals(Collections.singletonList(1L), wheel.advance(START + 30));
+        assertEquals(Collections.emptyList(), wheel.advance(START + 50));
+        assertEquals(Collections.singletonList(2L), wheel.advance(START + 60));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cascadesFromHigherLevels() {
+        // 第0层覆盖80ms，第1层覆盖640ms，第2层覆盖5120ms
+        TimingWheel wheel = new TimingWheel(10, 8, START);
+        long[] deadlines = {START + 75, START + 85, START + 500, START + 650, START + 4000};
+        for (int i = 0; i < deadlines.length; i++) {
+            wheel.add(i, deadlines[i]);
+        }
+
+        // 逐个tick推进，每个任务只能在截止时间所在的tick到期
+        List<Long> expired = new ArrayList<>();
+        for (long now = START + 10; now <= START + 5000; now += 10) {
+            for (Long id : wheel.advance(now)) {
+                long deadline = deadlines[id.intValue()];
+                assertTrue(deadline < now && deadline >= now - 10, "任务" + id + "在" + (now - START) + "到期");
+                expired.add(id);
+            }
+        }
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L), expired);
+    }
+
+    @Test
+    void addsLevelsBeyondTheHighestRange() {
+        TimingWheel wheel = new TimingWheel(10, 4, START);
+        // 远超第0层的40ms，需要增加多层
+        long deadline = START + 100_000;
+        wheel.add(1, deadline);
+
+        assertEquals(Collections.emptyList(), wheel.advance(deadline - 10));
+        assertEquals(Collections.singletonList(1L), wheel.advance(deadline + 10));
+    }
+
+    @Test
+    void returnsOverdueTasksOnNextAdvance() {
+        TimingWheel wheel = new TimingWheel(10, 8, START);
+        wheel.advance(START + 100);
+        wheel.add(1, START);
+
+        assertEquals(Collections.singletonList(1L), wheel.advance(START + 100));
+        assertFalse(wheel.contains(1));
+    }
+
+    @Test
+    void keepsOneTaskPerId() {
+        TimingWheel wheel = new TimingWheel(10, 8, START);
+        assertTrue(wheel.add(1, START + 30));
+        assertFalse(wheel.add(1, START + 60));
+        assertEquals(1, wheel.size());
+
+        assertEquals(Collections.singletonList(1L), wheel.advance(START + 100));
+        // 到期之后可以重新添加
+        assertTrue(wheel.add(1, START + 150));
+        assertEquals(Collections.singletonList(1L), wheel.advance(START + 200));
+    }
+
+    @Test
+    void rejectsInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel(0, 8, START));
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel(10, 1, START));
+    }
+}
@@ -0,0 +1,65 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WireCacheCodecTest {
+
+    private static final String KEY = "cache:shop:1";
+
+    // 与Spring MVC相同的方式创建ObjectMapper
+    private final WireCacheCodec codec = new WireCacheCodec(Jackson2ObjectMapperBuilder.json().build());
+    private final CacheCodecs codecs = new CacheCodecs(
+            Arrays.asList(new JsonCacheCodec(), codec), "cache:shop:=wire");
+
+    @Test
+    void roundTrips() {
+        Shop shop = BinaryCacheCodecTest.sampleShop();
+        byte[] bytes = codec.encode(shop);
+
+        assertEquals(shop, codec.decode(bytes, 0, bytes.length, Shop.class));
+    }
+
+    @Test
+    void readsPayloadWithoutDecoding() {
+        Shop shop = BinaryCacheCodecTest.sampleShop();
+        LocalDateTime expireTime = LocalDateTime.of(2030, 1, 1, 12, 0, 0);
+        byte[] bytes = codecs.encode(KEY, shop, expireTime);
+
+        RawCacheValue raw = codecs.readRaw(bytes, WireCacheCodec.ID);
+        assertNotNull(raw);
+        assertEquals(expireTime, raw.getExpireTime());
+        assertArrayEquals(codec.encode(shop), Arrays.copyOfRange(bytes, raw.getOffset(), bytes.length));
+    }
+
+    @Test
+    void treatsVersionMismatchAsMiss() {
+        byte[] bytes = codecs.encode(KEY, BinaryCacheCodecTest.sampleShop());
+        bytes[2] = (byte) (codec.version() + 1);
+
+        assertNull(codecs.readRaw(bytes, WireCacheCodec.ID));
+        assertNull(codecs.decode(bytes, Shop.class, false));
+    }
+
+    @Test
+    void rejectsValuesOfOtherCodecs() {
+        byte[] json = new CacheCodecs(Arrays.asList(new JsonCacheCodec(), codec), "")
+                .encode(KEY, BinaryCacheCodecTest.sampleShop());
+
+        assertNull(codecs.readRaw(json, WireCacheCodec.ID));
+    }
+
+    @Test
+    void treatsUnparsableValueAsMiss() {
+        byte[] bytes = "{\"id\":".getBytes(StandardCharsets.UTF_8);
+
+        assertNull(codec.decode(bytes, 0, bytes.length, Shop.class));
+    }
+}